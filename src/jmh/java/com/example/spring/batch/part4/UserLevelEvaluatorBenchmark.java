@@ -0,0 +1,105 @@
+package com.example.spring.batch.part4;
+
+import com.example.spring.batch.part5.Orders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+    1,000건 chunk 기준 등급 판별 비용 비교
+    등급은 NORMAL ~ VIP를 섞고 금액도 0 ~ 600,000 사이로 만들어서 모든 분기를 지나가게 한다.
+
+    entity     : total_amount 컬럼이 생기기 전의 판별, user마다 orders를 stream으로 합산한 뒤 Level 규칙으로 판별
+    projection : UserTotalAmount 1건씩 판별
+    columnar   : ColumnarUserLevelUpItemWriter와 같이 chunk(List)를 기본형 배열로 옮기고 UserLevelEvaluator로 한 번에 판별
+                 writer가 chunk마다 하는 List -> 배열 복사, 변경 전 등급 탐색까지 포함한다.
+
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UserLevelEvaluatorBenchmark {
+
+    @Param({"1000"})
+    private int chunkSize;
+
+    @Param({"1", "10"})
+    private int ordersPerUser;
+
+    private List<User> users;
+    // User 엔티티는 등급을 바꿀 수 없으므로 entity 판별에 쓸 등급을 따로 둔다.
+    private User.Level[] levels;
+    private List<UserTotalAmount> projections;
+    // update 없이 판별까지만 사용
+    private ColumnarUserLevelUpItemWriter columnarWriter;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        users = new ArrayList<>(chunkSize);
+        levels = new User.Level[chunkSize];
+        projections = new ArrayList<>(chunkSize);
+        columnarWriter = new ColumnarUserLevelUpItemWriter((UserLevelUpItemWriter<UserTotalAmount>) null);
+
+        for (int i = 0; i < chunkSize; i++) {
+            List<Orders> orders = new ArrayList<>(ordersPerUser);
+            long totalAmount = 0;
+            for (int j = 0; j < ordersPerUser; j++) {
+                int amount = random.nextInt(600_000 / ordersPerUser);
+                totalAmount += amount;
+                orders.add(Orders.builder()
+                        .amount(amount)
+                        .createdDate(LocalDate.of(2020, 11, 1))
+                        .itemName("item" + j)
+                        .build());
+            }
+
+            users.add(User.builder()
+                    .username("test username" + i)
+                    .orders(orders)
+                    .build());
+            levels[i] = User.Level.values()[random.nextInt(User.Level.values().length)];
+            projections.add(new UserTotalAmount((long) i, levels[i], totalAmount));
+        }
+    }
+
+    @Benchmark
+    public void entity(Blackhole blackhole) {
+        for (int i = 0; i < users.size(); i++) {
+            long totalAmount = users.get(i).getOrders().stream()
+                    .mapToLong(Orders::getAmount)
+                    .sum();
+            if (User.Level.availableLevelUp(levels[i], totalAmount)) {
+                blackhole.consume(User.Level.getNextLevel(totalAmount));
+            }
+        }
+    }
+
+    @Benchmark
+    public void projection(Blackhole blackhole) {
+        for (UserTotalAmount user : projections) {
+            if (user.availableLevelUp()) {
+                blackhole.consume(user.nextLevel());
+            }
+        }
+    }
+
+    @Benchmark
+    public int columnar() {
+        return columnarWriter.evaluate(projections);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.spring.batch.part5;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+    (sum(amount), created_date) 조회 결과 매핑, csv 한 줄 변환 비용 비교
+    H2 in-memory 테이블에서 rows 건을 읽는 시간에 매핑 비용이 더해진다.
+
+    stringMapper    : 기존 rowMapper, rs.getString(1) + LocalDate.parse(rs.getString(2))
+    typedMapper     : OrderStatisticsRowMapper, getLong + getObject(LocalDate)
+    beanWrapperLine : 기존 BeanWrapperFieldExtractor + DelimitedLineAggregator
+    lineAggregator  : OrderStatisticsLineAggregator
+
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OrderStatisticsRowMapperBenchmark {
+
+    private static final String SELECT_SQL = "select amount, created_date from order_statistics_benchmark";
+
+    @Param({"10000"})
+    private int rows;
+
+    private Connection connection;
+    private List<OrderStatistics> statistics;
+
+    private final OrderStatisticsRowMapper rowMapper = new OrderStatisticsRowMapper();
+    private final OrderStatisticsLineAggregator lineAggregator = new OrderStatisticsLineAggregator();
+    private DelimitedLineAggregator<OrderStatistics> delimitedLineAggregator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:order_statistics_benchmark;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table order_statistics_benchmark (amount bigint, created_date date)");
+        }
+
+        statistics = new ArrayList<>(rows);
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        try (PreparedStatement statement = connection.prepareStatement("insert into order_statistics_benchmark values (?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                long amount = 3_000_000_000L + i;
+                LocalDate date = start.plusDays(i % 3650);
+                statement.setLong(1, amount);
+                statement.setObject(2, date);
+                statement.addBatch();
+                statistics.add(new OrderStatistics(amount, date));
+            }
+            statement.executeBatch();
+        }
+
+        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
+        fieldExtractor.setNames(new String[]{"amount", "date"});
+        delimitedLineAggregator = new DelimitedLineAggregator<>();
+        delimitedLineAggregator.setDelimiter(",");
+        delimitedLineAggregator.setFieldExtractor(fieldExtractor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop table order_statistics_benchmark");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public void stringMapper(Blackhole blackhole) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(SELECT_SQL)) {
+            while (rs.next()) {
+                // 기존 OrderStatistics(String amount, LocalDate date)를 만들던 비용
+                blackhole.consume(new StringOrderStatistics(
+                        rs.getString(1),
+                        LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE)));
+            }
+        }
+    }
+
+    @Benchmark
+    public void typedMapper(Blackhole blackhole) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(SELECT_SQL)) {
+            int rowNum = 0;
+            while (rs.next()) {
+                blackhole.consume(rowMapper.mapRow(rs, rowNum++));
+            }
+        }
+    }
+
+    @Benchmark
+    public void beanWrapperLine(Blackhole blackhole) {
+        for (OrderStatistics statistic : statistics) {
+            blackhole.consume(delimitedLineAggregator.aggregate(statistic));
+        }
+    }
+
+    @Benchmark
+    public void lineAggregator(Blackhole blackhole) {
+        for (OrderStatistics statistic : statistics) {
+            blackhole.consume(lineAggregator.aggregate(statistic));
+        }
+    }
+
+    // amount를 String으로 가지던 기존 OrderStatistics
+    private static class StringOrderStatistics {
+        private final String amount;
+        private final LocalDate date;
+
+        StringOrderStatistics(String amount, LocalDate date) {
+            this.amount = amount;
+            this.date = date;
+        }
+    }
+}
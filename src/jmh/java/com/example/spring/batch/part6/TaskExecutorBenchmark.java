@@ -0,0 +1,116 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.BatchTaskExecutors;
+import com.example.spring.batch.SpringBatchExampleApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+
+    asyncUserJob, partitionUserJob의 등급 상향 step 1회 실행 시간을 platform thread pool과 virtual thread로 비교
+    user 40,000명을 저장하는 saveUserStep은 executor와 관계없으므로 iteration 준비 단계에서 실행하고,
+    측정하는 Job에는 executor를 사용하는 userLevelUpStep (partitionUserJob은 manager step)만 넣는다.
+    SingleShotTime은 iteration마다 1번 실행하므로 매 실행 전에 등급이 바뀌기 전의 user를 다시 저장한다.
+    virtual은 JDK 21 이상에서 실행해야 한다. (아니면 ThreadPoolTaskExecutor로 대체되어 두 결과가 같다.)
+    DB 대기 시간이 드러나도록 MySQL에서 측정하려면 -Djmh.profiles=mysql
+
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TaskExecutorBenchmark {
+
+    @Param({"platform", "virtual"})
+    private String executor;
+
+    @Param({"asyncUserJob", "partitionUserJob"})
+    private String jobName;
+
+    private ConfigurableApplicationContext context;
+    private JobLauncher jobLauncher;
+    // saveUserStep만 실행하는 Job
+    private Job seedJob;
+    // 측정 대상 step만 실행하는 Job
+    private Job levelUpJob;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(SpringBatchExampleApplication.class)
+                .profiles(System.getProperty("jmh.profiles", "default").split(","))
+                .properties("batch.executor=" + executor,
+                        "job.name=NONE",
+                        "spring.jpa.show-sql=false")
+                .run();
+
+        jobLauncher = context.getBean(JobLauncher.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        JobBuilderFactory jobBuilderFactory = context.getBean(JobBuilderFactory.class);
+        seedJob = jobBuilderFactory.get(jobName + "_benchmarkSeed")
+                .start(context.getBean(jobName + "_saveUserStep", Step.class))
+                .build();
+        levelUpJob = jobBuilderFactory.get(jobName + "_benchmarkLevelUp")
+                .start(context.getBean(levelUpStepName(), Step.class))
+                // executor 사용량 로그
+                .listener((JobExecutionListener) new TaskExecutorSizingListener(context.getBean(BatchTaskExecutors.class)))
+                .build();
+    }
+
+    // 매 실행마다 같은 양의 user를 새로 저장한다. 측정 시간에 포함되지 않는다.
+    @Setup(Level.Iteration)
+    public void seed() throws Exception {
+        jdbcTemplate.update("delete from orders");
+        jdbcTemplate.update("delete from user");
+        run(seedJob);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public JobExecution launch() throws Exception {
+        return run(levelUpJob);
+    }
+
+    private String levelUpStepName() {
+        if ("partitionUserJob".equals(jobName)) {
+            return jobName + "_userLevelUpStep.manager";
+        }
+        return jobName + "_userLevelUpStep";
+    }
+
+    private JobExecution run(Job job) throws Exception {
+        JobExecution jobExecution = jobLauncher.run(job, new JobParametersBuilder()
+                .addLong("time", System.nanoTime())
+                .toJobParameters());
+
+        if (jobExecution.getStatus() != BatchStatus.COMPLETED) {
+            throw new IllegalStateException(job.getName() + " 실패 : " + jobExecution.getExitStatus());
+        }
+        return jobExecution;
+    }
+}
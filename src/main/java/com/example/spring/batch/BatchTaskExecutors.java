@@ -0,0 +1,157 @@
+package com.example.spring.batch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/*
+
+    하나의 taskExecutor를 split flow, partition worker, AsyncItemProcessor가 같이 쓰면
+    partition Thread가 자기 뒤에 쌓인 AsyncItemProcessor 작업의 Future를 기다리면서 Pool을 모두 차지해 Job이 멈출 수 있다.
+    그래서 역할마다 크기가 제한된 TaskExecutor를 따로 두고, 각각 TaskExecutorMetrics로 기록한다.
+
+    flow      : split flow 실행, flow 수만큼만 필요
+    partition : partition worker, 대기 큐 없이 gridSize 만큼 Thread를 만든다.
+    asyncItem : AsyncItemProcessor, partition 하나당 chunk 크기에 비례한 Thread 수
+                큐가 가득 차면 제출한 partition Thread가 직접 처리해서 서로 기다리지 않는다.
+
+    Thread 수는 파티션 manager step 시작 시 resize(gridSize, chunkSize)로 정한다.
+    virtual 모드에서는 역할마다 별도 Semaphore를 가진 VirtualThreadTaskExecutor를 사용한다.
+
+    역할마다 Thread가 커넥션을 하나씩 잡을 수 있으므로 DataSource 커넥션 수(connectionBudget) 하나를 역할별로 나눠서
+    모든 역할의 동시 실행 수 합이 커넥션 수를 넘지 않게 한다.
+    flow : 최대 FLOW_THREADS, 커넥션의 1/4 / partition : 나머지의 절반 / asyncItem : 나머지
+
+ */
+@Slf4j
+public class BatchTaskExecutors implements DisposableBean {
+
+    public static final int MAX_PARTITION_THREADS = 20;
+
+    private static final int FLOW_THREADS = 4;
+    // AsyncItemProcessor Thread 하나가 맡을 chunk 내 item 수
+    private static final int ITEMS_PER_ASYNC_THREAD = 500;
+    private static final int MAX_ASYNC_THREADS_PER_PARTITION = 4;
+    // 모든 partition이 가장 큰 chunk(5,000건)를 동시에 제출해도 담을 수 있는 크기
+    private static final int ASYNC_QUEUE_CAPACITY = MAX_PARTITION_THREADS * 5_000;
+
+    private final TaskExecutorMetrics flowMetrics = new TaskExecutorMetrics("flow");
+    private final TaskExecutorMetrics partitionMetrics = new TaskExecutorMetrics("partition");
+    private final TaskExecutorMetrics asyncItemMetrics = new TaskExecutorMetrics("asyncItem");
+
+    private final TaskExecutor flow;
+    private final TaskExecutor partition;
+    private final TaskExecutor asyncItem;
+    // JobRepository 갱신에 쓸 커넥션을 뺀 DataSource 커넥션 수
+    private final int connectionBudget;
+
+    public BatchTaskExecutors(boolean virtual, int connectionBudget) {
+        this.connectionBudget = connectionBudget;
+        if (virtual) {
+            int flowLimit = Math.max(1, Math.min(FLOW_THREADS, connectionBudget / 4));
+            int partitionLimit = Math.max(1, (connectionBudget - flowLimit) / 2);
+            int asyncItemLimit = Math.max(1, connectionBudget - flowLimit - partitionLimit);
+            log.info("커넥션 {}개를 flow {}, partition {}, asyncItem {}개로 나눠서 사용",
+                    connectionBudget, flowLimit, partitionLimit, asyncItemLimit);
+
+            this.flow = virtualExecutor("batch-flow-", flowLimit, flowMetrics);
+            this.partition = virtualExecutor("batch-partition-", partitionLimit, partitionMetrics);
+            this.asyncItem = virtualExecutor("batch-async-item-", asyncItemLimit, asyncItemMetrics);
+            return;
+        }
+
+        this.flow = threadPoolExecutor("batch-flow-", FLOW_THREADS, FLOW_THREADS, FLOW_THREADS, flowMetrics);
+        // 큐가 없으므로 제출된 worker 수만큼만 Thread가 생긴다.
+        this.partition = threadPoolExecutor("batch-partition-", 1, MAX_PARTITION_THREADS, 0, partitionMetrics);
+        this.asyncItem = threadPoolExecutor("batch-async-item-", 1, 1, ASYNC_QUEUE_CAPACITY, asyncItemMetrics);
+    }
+
+    // 파티션 수 등을 정할 때 커넥션 수는 여기서 가져온다.
+    public int connectionBudget() {
+        return connectionBudget;
+    }
+
+    public TaskExecutor flow() {
+        return flow;
+    }
+
+    public TaskExecutor partition() {
+        return partition;
+    }
+
+    public TaskExecutor asyncItem() {
+        return asyncItem;
+    }
+
+    // partition Thread는 gridSize 만큼 유지하고, AsyncItemProcessor Thread는 partition 수와 chunk 크기에 맞춘다.
+    // AsyncItemProcessor Thread는 partition Thread가 쓰고 남은 커넥션 수를 넘지 않는다.
+    public void resize(int gridSize, int chunkSize) {
+        int partitionThreads = Math.min(gridSize, MAX_PARTITION_THREADS);
+        if (partition instanceof ThreadPoolTaskExecutor) {
+            ((ThreadPoolTaskExecutor) partition).setCorePoolSize(partitionThreads);
+        }
+
+        if (asyncItem instanceof ThreadPoolTaskExecutor) {
+            int threadsPerPartition = Math.min(MAX_ASYNC_THREADS_PER_PARTITION,
+                    Math.max(1, (chunkSize + ITEMS_PER_ASYNC_THREAD - 1) / ITEMS_PER_ASYNC_THREAD));
+            int asyncThreads = Math.min(partitionThreads * threadsPerPartition,
+                    Math.max(1, connectionBudget - partitionThreads));
+            setPoolSize((ThreadPoolTaskExecutor) asyncItem, asyncThreads);
+        }
+    }
+
+    public void resetMetrics() {
+        flowMetrics.reset();
+        partitionMetrics.reset();
+        asyncItemMetrics.reset();
+    }
+
+    public void logMetrics() {
+        log.info("{}", flowMetrics);
+        log.info("{}", partitionMetrics);
+        log.info("{}", asyncItemMetrics);
+    }
+
+    @Override
+    public void destroy() {
+        for (TaskExecutor executor : new TaskExecutor[]{flow, partition, asyncItem}) {
+            if (executor instanceof ThreadPoolTaskExecutor) {
+                ((ThreadPoolTaskExecutor) executor).shutdown();
+            }
+        }
+    }
+
+    // core > max가 되지 않도록 늘릴 때는 max부터, 줄일 때는 core부터 바꾼다.
+    private static void setPoolSize(ThreadPoolTaskExecutor executor, int size) {
+        if (size > executor.getMaxPoolSize()) {
+            executor.setMaxPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaxPoolSize(size);
+        }
+    }
+
+    private static TaskExecutor virtualExecutor(String threadNamePrefix, int concurrencyLimit, TaskExecutorMetrics metrics) {
+        VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor(threadNamePrefix, concurrencyLimit);
+        executor.setTaskDecorator(metrics);
+        return executor;
+    }
+
+    private static TaskExecutor threadPoolExecutor(String threadNamePrefix, int corePoolSize, int maxPoolSize,
+                                                   int queueCapacity, TaskExecutorMetrics metrics) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setTaskDecorator(metrics);
+        // 큐와 Thread가 모두 찬 경우 제출한 Thread가 직접 실행
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
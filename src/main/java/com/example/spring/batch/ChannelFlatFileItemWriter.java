@@ -0,0 +1,343 @@
+package com.example.spring.batch;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+/*
+
+    FlatFileItemWriter 대신 재사용하는 ByteBuffer에 UTF-8로 바로 인코딩해서 FileChannel로 쓰는 ItemWriter
+    item마다 reflection, 줄마다 String을 만들지 않고 숫자, 날짜는 byte로 바로 쓴다.
+
+    - chunk 1개를 buffer에 모아서 write 1번, buffer가 차면 중간에 채널로 내보낸다.
+    - 롤백되면 chunk를 쓰기 전 위치로 truncate 한다. 인코딩 중 예외가 나면 buffer에 남은 내용도 버린다.
+    - forceOnCommit이면 커밋 후 FileChannel.force로 디스크까지 내린다.
+    - 커밋된 byte 위치를 ExecutionContext에 저장하고 재시작 시 그 위치로 truncate 해서 이어 쓴다.
+
+    ex)
+    new ChannelFlatFileItemWriter<OrderStatistics>(path, "orderStatisticsItemWriter",
+            (item, line) -> line.append(item.getAmount()).append(',').append(item.getDate()));
+
+ */
+public class ChannelFlatFileItemWriter<T> extends ItemStreamSupport implements ItemStreamWriter<T> {
+
+    private static final String POSITION_KEY = "position";
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final Path path;
+    private final LineEncoder<T> encoder;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private boolean forceOnCommit;
+    private boolean append;
+    private String header;
+    private String footer;
+
+    private FileChannel channel;
+    private Line line;
+
+    public ChannelFlatFileItemWriter(Path path, String name, LineEncoder<T> encoder) {
+        this.path = path;
+        this.encoder = encoder;
+        setName(name);
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    // 커밋마다 force 하면 장애 시에도 커밋된 내용이 파일에 남지만 커밋이 느려진다.
+    public void setForceOnCommit(boolean forceOnCommit) {
+        this.forceOnCommit = forceOnCommit;
+    }
+
+    // 기존 파일 뒤에 이어 쓴다. header는 빈 파일일 때만 쓴다.
+    public void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    // 줄바꿈은 자동으로 붙인다.
+    public void setHeader(String header) {
+        this.header = header;
+    }
+
+    // FlatFileItemWriter의 footerCallback과 같이 줄바꿈을 붙이지 않는다.
+    public void setFooter(String footer) {
+        this.footer = footer;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        super.open(executionContext);
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            line = new Line(ByteBuffer.allocate(bufferSize), channel);
+
+            String key = getExecutionContextKey(POSITION_KEY);
+            if (executionContext.containsKey(key)) {
+                // 재시작, 마지막 커밋 이후에 쓰인 내용은 버린다.
+                long position = executionContext.getLong(key);
+                if (channel.size() < position) {
+                    throw new ItemStreamException("파일 크기가 마지막 커밋 위치보다 작습니다 : " + path);
+                }
+                channel.truncate(position);
+                channel.position(position);
+                return;
+            }
+
+            if (append) {
+                channel.position(channel.size());
+            } else {
+                channel.truncate(0);
+            }
+            if (header != null && channel.position() == 0) {
+                line.append(header).newLine();
+                line.flush();
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("파일을 열 수 없습니다 : " + path, e);
+        }
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+        long start = channel.position();
+        registerSynchronization(start);
+
+        try {
+            for (T item : items) {
+                encoder.encode(item, line);
+                line.newLine();
+            }
+            line.flush();
+        } catch (Exception e) {
+            // 실패한 chunk의 내용이 다음 chunk와 같이 쓰이지 않도록
+            line.clear();
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                channel.truncate(start);
+                channel.position(start);
+            }
+            throw e;
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive() && forceOnCommit) {
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        super.update(executionContext);
+        if (channel == null) {
+            return;
+        }
+        try {
+            executionContext.putLong(getExecutionContextKey(POSITION_KEY), channel.position());
+        } catch (IOException e) {
+            throw new ItemStreamException("파일 위치를 읽을 수 없습니다 : " + path, e);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        super.close();
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (footer != null) {
+                line.append(footer);
+                line.flush();
+            }
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("파일을 닫을 수 없습니다 : " + path, e);
+        } finally {
+            channel = null;
+            line = null;
+        }
+    }
+
+    private void registerSynchronization(long start) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        FileChannel current = channel;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (!forceOnCommit) {
+                    return;
+                }
+                try {
+                    current.force(false);
+                } catch (IOException e) {
+                    throw new ItemStreamException("파일을 디스크에 쓸 수 없습니다 : " + path, e);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    return;
+                }
+                // 롤백된 chunk가 쓴 내용을 버린다.
+                try {
+                    current.truncate(start);
+                    current.position(start);
+                } catch (IOException e) {
+                    throw new ItemStreamException("롤백된 내용을 지울 수 없습니다 : " + path, e);
+                }
+            }
+        });
+    }
+
+    // item 1건을 line에 쓴다. 줄바꿈은 writer가 붙인다.
+    public interface LineEncoder<T> {
+        void encode(T item, Line line) throws IOException;
+    }
+
+    /*
+        한 chunk를 인코딩하는 ByteBuffer
+        공간이 부족하면 지금까지 쓴 내용을 채널로 내보내고 이어서 쓴다.
+     */
+    public static class Line {
+        // long 최솟값 20자리
+        private static final int MAX_NUMBER_LENGTH = 20;
+        private static final byte[] LONG_MIN = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+        private final ByteBuffer buffer;
+        private final FileChannel channel;
+        private final byte[] digits = new byte[MAX_NUMBER_LENGTH];
+
+        Line(ByteBuffer buffer, FileChannel channel) {
+            this.buffer = buffer;
+            this.channel = channel;
+        }
+
+        public Line append(long value) throws IOException {
+            ensure(MAX_NUMBER_LENGTH);
+            if (value == Long.MIN_VALUE) {
+                buffer.put(LONG_MIN);
+                return this;
+            }
+            if (value < 0) {
+                buffer.put((byte) '-');
+                value = -value;
+            }
+            int index = digits.length;
+            do {
+                digits[--index] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            buffer.put(digits, index, digits.length - index);
+            return this;
+        }
+
+        // yyyy-MM-dd
+        public Line append(LocalDate date) throws IOException {
+            int year = date.getYear();
+            if (year < 1000 || year > 9999) {
+                return append(date.toString());
+            }
+            ensure(10);
+            putDigits(year / 100);
+            putDigits(year % 100);
+            buffer.put((byte) '-');
+            putDigits(date.getMonthValue());
+            buffer.put((byte) '-');
+            putDigits(date.getDayOfMonth());
+            return this;
+        }
+
+        // ASCII 문자 1개, 구분자 등
+        public Line append(char value) throws IOException {
+            if (value >= 0x80) {
+                return append(String.valueOf(value));
+            }
+            ensure(1);
+            buffer.put((byte) value);
+            return this;
+        }
+
+        public Line append(String value) throws IOException {
+            if (value == null) {
+                return this;
+            }
+            int length = value.length();
+            // ASCII는 char를 그대로 byte로
+            int i = 0;
+            while (i < length) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                ensure(1);
+                buffer.put((byte) c);
+                i++;
+            }
+            if (i < length) {
+                putBytes(value.substring(i).getBytes(StandardCharsets.UTF_8));
+            }
+            return this;
+        }
+
+        Line newLine() throws IOException {
+            return append('\n');
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        // 채널로 내보내지 않은 내용을 버린다.
+        void clear() {
+            buffer.clear();
+        }
+
+        private void putDigits(int twoDigits) {
+            buffer.put((byte) ('0' + twoDigits / 10));
+            buffer.put((byte) ('0' + twoDigits % 10));
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void ensure(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.spring.batch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.UnexpectedJobExecutionException;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.job.SimpleStepHandler;
+import org.springframework.batch.core.job.StepHandler;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.AbstractStep;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.task.TaskExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/*
+
+    step마다 읽고 쓰는 자원(테이블, 파일 등)을 선언하면 의존 관계 그래프(DAG)를 만들어
+    서로 겹치지 않는 step은 taskExecutor에서 병렬로 실행하는 Step
+    FlowBuilder로 split을 직접 조립하지 않아도 된다.
+
+    선언 순서상 앞의 step과 아래 경우에 충돌이 있으면 앞의 step이 끝난 뒤에 실행한다.
+    - 앞의 step이 쓴 자원을 읽거나 쓰는 경우
+    - 앞의 step이 읽은 자원을 쓰는 경우
+    읽기끼리는 충돌하지 않는다.
+
+    실행할 수 있는 step이 여러 개면 이전 실행 시간 기준으로 뒤에 남은 경로(critical path)가 가장 긴 step부터 시작한다.
+    재시작 시에는 이미 COMPLETED 된 step은 SimpleStepHandler가 건너뛴다.
+
+    ex)
+    DagStep.builder("itemReaderJob_dagStep", jobRepository)
+            .taskExecutor(taskExecutor)
+            .jobExplorer(jobExplorer)
+            .step(jdbcStep()).reads("table:person")
+            .step(savePersonStep()).reads("file:person.csv").writes("table:person")
+            .build();
+
+ */
+@Slf4j
+public class DagStep extends AbstractStep {
+
+    // critical path 계산에 사용할 이전 Job 실행 수
+    private static final int HISTORY_SIZE = 5;
+    // 이전 실행 기록이 없는 step의 예상 시간
+    private static final long DEFAULT_DURATION_MILLIS = 1;
+
+    private final List<Node> nodes;
+    private final TaskExecutor taskExecutor;
+    private final JobExplorer jobExplorer;
+
+    private DagStep(String name, JobRepository jobRepository, List<Node> nodes,
+                    TaskExecutor taskExecutor, JobExplorer jobExplorer) {
+        super(name);
+        setJobRepository(jobRepository);
+        this.nodes = nodes;
+        this.taskExecutor = taskExecutor;
+        this.jobExplorer = jobExplorer;
+        link(nodes);
+    }
+
+    public static Builder builder(String name, JobRepository jobRepository) {
+        return new Builder(name, jobRepository);
+    }
+
+    @Override
+    protected void doExecute(StepExecution stepExecution) throws Exception {
+        JobExecution jobExecution = stepExecution.getJobExecution();
+        StepHandler stepHandler = new SimpleStepHandler(getJobRepository(), new ExecutionContext());
+
+        Map<Node, Long> priorities = priorities(durations(jobExecution.getJobInstance()));
+        Map<Node, Integer> remainingDependencies = new HashMap<>();
+        PriorityQueue<Node> ready = new PriorityQueue<>(
+                Comparator.comparingLong((Node node) -> priorities.get(node)).reversed());
+        for (Node node : nodes) {
+            remainingDependencies.put(node, node.dependencies.size());
+            if (node.dependencies.isEmpty()) {
+                ready.add(node);
+            }
+        }
+
+        BlockingQueue<Result> finished = new LinkedBlockingQueue<>();
+        List<String> failedSteps = new ArrayList<>();
+        int running = 0;
+        int done = 0;
+
+        while (done < nodes.size()) {
+            // 실패한 step이 있으면 새 step은 시작하지 않고 실행 중인 step만 기다린다.
+            while (failedSteps.isEmpty() && !ready.isEmpty()) {
+                Node node = ready.poll();
+                running++;
+                log.info("{} 시작 (critical path {}ms)", node.step.getName(), priorities.get(node));
+                taskExecutor.execute(() -> finished.add(execute(stepHandler, node, jobExecution)));
+            }
+
+            if (running == 0) {
+                break;
+            }
+
+            Result result = finished.take();
+            running--;
+            done++;
+
+            if (result.failure != null || result.stepExecution.getStatus() != BatchStatus.COMPLETED) {
+                failedSteps.add(result.node.step.getName());
+                continue;
+            }
+
+            for (Node dependent : result.node.dependents) {
+                int remaining = remainingDependencies.merge(dependent, -1, Integer::sum);
+                if (remaining == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        if (!failedSteps.isEmpty()) {
+            throw new UnexpectedJobExecutionException(getName() + " 실패 : " + failedSteps);
+        }
+    }
+
+    private Result execute(StepHandler stepHandler, Node node, JobExecution jobExecution) {
+        try {
+            return new Result(node, stepHandler.handleStep(node.step, jobExecution), null);
+        } catch (Throwable e) {
+            log.error("{} 실행 실패", node.step.getName(), e);
+            return new Result(node, null, e);
+        }
+    }
+
+    // 자기 시간 + 뒤에 이어지는 경로 중 가장 긴 시간
+    private Map<Node, Long> priorities(Map<String, Long> durations) {
+        Map<Node, Long> priorities = new HashMap<>();
+        // 선언 순서의 역순이면 뒤에 오는 step의 값이 먼저 계산된다.
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            Node node = nodes.get(i);
+            long longestDependent = node.dependents.stream()
+                    .mapToLong(priorities::get)
+                    .max()
+                    .orElse(0);
+            priorities.put(node, durations.getOrDefault(node.step.getName(), DEFAULT_DURATION_MILLIS) + longestDependent);
+        }
+        return priorities;
+    }
+
+    // 이전 Job 실행에서 COMPLETED 된 step의 평균 실행 시간
+    private Map<String, Long> durations(JobInstance currentInstance) {
+        Map<String, Long> durations = new HashMap<>();
+        if (jobExplorer == null) {
+            return durations;
+        }
+
+        Map<String, long[]> sums = new HashMap<>();
+        for (JobInstance instance : jobExplorer.getJobInstances(currentInstance.getJobName(), 0, HISTORY_SIZE + 1)) {
+            if (instance.getId().equals(currentInstance.getId())) {
+                continue;
+            }
+            for (JobExecution execution : jobExplorer.getJobExecutions(instance)) {
+                for (StepExecution step : execution.getStepExecutions()) {
+                    if (step.getStatus() != BatchStatus.COMPLETED || step.getStartTime() == null || step.getEndTime() == null) {
+                        continue;
+                    }
+                    long[] sum = sums.computeIfAbsent(step.getStepName(), x -> new long[2]);
+                    sum[0] += step.getEndTime().getTime() - step.getStartTime().getTime();
+                    sum[1]++;
+                }
+            }
+        }
+
+        sums.forEach((stepName, sum) -> durations.put(stepName, Math.max(DEFAULT_DURATION_MILLIS, sum[0] / sum[1])));
+        return durations;
+    }
+
+    // 선언 순서상 앞의 step과 자원이 충돌하면 의존 관계로 연결
+    private static void link(List<Node> nodes) {
+        for (int i = 0; i < nodes.size(); i++) {
+            Node later = nodes.get(i);
+            for (int j = 0; j < i; j++) {
+                Node earlier = nodes.get(j);
+                if (earlier.conflictsWith(later)) {
+                    later.dependencies.add(earlier);
+                    earlier.dependents.add(later);
+                }
+            }
+        }
+    }
+
+    private static class Node {
+        private final Step step;
+        private final Set<String> reads = new HashSet<>();
+        private final Set<String> writes = new HashSet<>();
+        private final Set<Node> dependencies = new HashSet<>();
+        private final Set<Node> dependents = new HashSet<>();
+
+        Node(Step step) {
+            this.step = step;
+        }
+
+        boolean conflictsWith(Node later) {
+            return !Collections.disjoint(writes, later.reads)
+                    || !Collections.disjoint(writes, later.writes)
+                    || !Collections.disjoint(reads, later.writes);
+        }
+    }
+
+    private static class Result {
+        private final Node node;
+        private final StepExecution stepExecution;
+        private final Throwable failure;
+
+        Result(Node node, StepExecution stepExecution, Throwable failure) {
+            this.node = node;
+            this.stepExecution = stepExecution;
+            this.failure = failure;
+        }
+    }
+
+    public static class Builder {
+        private final String name;
+        private final JobRepository jobRepository;
+        private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+        private TaskExecutor taskExecutor;
+        private JobExplorer jobExplorer;
+        private Node last;
+
+        private Builder(String name, JobRepository jobRepository) {
+            this.name = name;
+            this.jobRepository = jobRepository;
+        }
+
+        public Builder taskExecutor(TaskExecutor taskExecutor) {
+            this.taskExecutor = taskExecutor;
+            return this;
+        }
+
+        // 이전 실행 시간을 조회할 JobExplorer, 없으면 모든 step의 예상 시간을 같게 본다.
+        public Builder jobExplorer(JobExplorer jobExplorer) {
+            this.jobExplorer = jobExplorer;
+            return this;
+        }
+
+        public Builder step(Step step) {
+            if (nodes.containsKey(step.getName())) {
+                throw new IllegalArgumentException("step 이름이 중복됩니다 : " + step.getName());
+            }
+            this.last = new Node(step);
+            nodes.put(step.getName(), last);
+            return this;
+        }
+
+        // 바로 앞에 추가한 step이 읽는 자원
+        public Builder reads(String... resources) {
+            current().reads.addAll(Arrays.asList(resources));
+            return this;
+        }
+
+        // 바로 앞에 추가한 step이 쓰는 자원
+        public Builder writes(String... resources) {
+            current().writes.addAll(Arrays.asList(resources));
+            return this;
+        }
+
+        public DagStep build() {
+            if (taskExecutor == null) {
+                throw new IllegalStateException("taskExecutor가 필요합니다.");
+            }
+            return new DagStep(name, jobRepository, new ArrayList<>(nodes.values()), taskExecutor, jobExplorer);
+        }
+
+        private Node current() {
+            if (last == null) {
+                throw new IllegalStateException("reads, writes 전에 step을 추가해야 합니다.");
+            }
+            return last;
+        }
+    }
+}
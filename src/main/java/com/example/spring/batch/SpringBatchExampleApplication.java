@@ -1,28 +1,59 @@
 package com.example.spring.batch;
 
+import com.example.spring.batch.part6.RemotePartitionUserConfiguration;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Profiles;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
+import javax.sql.DataSource;
+import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Random;
 import java.util.Arrays;
+@Slf4j
 @SpringBootApplication
 @EnableBatchProcessing
 public class SpringBatchExampleApplication {
+
+    // --batch.executor=virtual 로 실행하면 JDK 21 이상에서 virtual thread를 사용
+    public static final String VIRTUAL_EXECUTOR = "virtual";
+    // Hikari 기본 최대 커넥션 수
+    private static final int DEFAULT_MAX_CONNECTIONS = 10;
+
     public static void main(String[] args) {
+        ConfigurableApplicationContext context = SpringApplication.run(SpringBatchExampleApplication.class, args);
+        // remote worker는 종료 신호로 context가 닫힐 때까지 poller가 DB 큐를 처리한다.
+        if (context.getEnvironment().acceptsProfiles(Profiles.of(RemotePartitionUserConfiguration.WORKER_PROFILE))) {
+            log.info("worker 실행 중, 종료 신호를 받으면 멈춥니다.");
+            return;
+        }
         // Async로 실행될때 안전하게 종료되도록
-        System.exit(SpringApplication.exit(SpringApplication.run(SpringBatchExampleApplication.class, args)));
+        System.exit(SpringApplication.exit(context));
     }
 
     // ㅔ 생성
     @Bean
     @Primary
-    TaskExecutor taskExecutor(){
+    TaskExecutor taskExecutor(@Value("${batch.executor:platform}") String executor, DataSource dataSource){
+        if (VIRTUAL_EXECUTOR.equals(executor)) {
+            if (VirtualThreadTaskExecutor.isSupported()) {
+                // JobRepository 갱신에 쓸 커넥션 하나는 남겨둔다.
+                int concurrencyLimit = Math.max(1, maxConnections(dataSource) - 1);
+                log.info("virtual thread TaskExecutor 사용, 동시 실행 {}개", concurrencyLimit);
+                return new VirtualThreadTaskExecutor("batch-virtual-", concurrencyLimit);
+            }
+            log.warn("JDK {}에서는 virtual thread를 사용할 수 없어 ThreadPoolTaskExecutor 사용", System.getProperty("java.version"));
+        }
+
         // ThreadPoolTaskExecutor는 Pool 안에서 Thread를 몇 개 생성해놓고 필요할 때 꺼내쓸 수 있어 다른 구현체보다 효율적이다.
         ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
         // Pool의 기본 Thread 크기 설정
@@ -34,9 +65,23 @@ public class SpringBatchExampleApplication {
         taskExecutor.initialize();
         return taskExecutor;
     }
-}
-
-
-
 
+    // split flow, partition worker, AsyncItemProcessor가 서로의 Thread를 기다리지 않도록 역할별로 나눈 TaskExecutor
+    // 커넥션 수는 이 Bean의 connectionBudget()으로 다른 곳에서도 같은 값을 사용한다.
+    @Bean
+    BatchTaskExecutors batchTaskExecutors(@Value("${batch.executor:platform}") String executor, DataSource dataSource) {
+        boolean virtual = VIRTUAL_EXECUTOR.equals(executor) && VirtualThreadTaskExecutor.isSupported();
+        return new BatchTaskExecutors(virtual, Math.max(1, maxConnections(dataSource) - 1));
+    }
 
+    private static int maxConnections(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+            }
+        } catch (SQLException e) {
+            log.warn("DataSource 커넥션 수를 확인할 수 없어 기본값 사용", e);
+        }
+        return DEFAULT_MAX_CONNECTIONS;
+    }
+}
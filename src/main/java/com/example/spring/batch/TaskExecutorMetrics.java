@@ -0,0 +1,96 @@
+package com.example.spring.batch;
+
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+
+    TaskExecutor 하나의 작업 수, 큐 대기 시간, 실행 시간, 최대 동시 실행 수를 기록하는 TaskDecorator
+    대기 시간이 길면 Thread가 부족한 것이고, 최대 동시 실행 수가 Pool 크기보다 한참 작으면 Pool이 너무 크다.
+
+ */
+public class TaskExecutorMetrics implements TaskDecorator {
+
+    private final String name;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    public TaskExecutorMetrics(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        long submittedAt = System.nanoTime();
+        submitted.increment();
+
+        return () -> {
+            long startedAt = System.nanoTime();
+            waitNanos.add(startedAt - submittedAt);
+            peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+
+            try {
+                runnable.run();
+            } finally {
+                active.decrementAndGet();
+                runNanos.add(System.nanoTime() - startedAt);
+                completed.increment();
+            }
+        };
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public int getPeakActive() {
+        return peakActive.get();
+    }
+
+    public long getAverageWaitMillis() {
+        long count = completed.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos.sum() / count);
+    }
+
+    public long getAverageRunMillis() {
+        long count = completed.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(runNanos.sum() / count);
+    }
+
+    // Job 단위로 보기 위해 Job 시작 시 초기화
+    public void reset() {
+        submitted.reset();
+        completed.reset();
+        waitNanos.reset();
+        runNanos.reset();
+        peakActive.set(active.get());
+    }
+
+    @Override
+    public String toString() {
+        return name + " : 작업 " + getSubmitted() + "건 (완료 " + getCompleted() + "건)"
+                + ", 평균 대기 " + getAverageWaitMillis() + "ms"
+                + ", 평균 실행 " + getAverageRunMillis() + "ms"
+                + ", 최대 동시 실행 " + getPeakActive();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.spring.batch;
+
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/*
+
+    작업마다 virtual thread를 하나씩 만들어 실행하는 TaskExecutor (JDK 21 이상)
+    AsyncItemProcessor, split flow, partition 작업은 대부분 JDBC 응답을 기다리며 blocking 되므로
+    Thread를 Pool에 묶어두지 않고 필요한 만큼 만든다.
+
+    동시에 실행되는 작업 수는 Semaphore로 커넥션 수에 맞춰 제한한다.
+    permit은 virtual thread 안에서 얻기 때문에 작업을 넘기는 쪽은 blocking 되지 않는다.
+
+    소스 호환성이 1.8이라 Thread.ofVirtual()은 reflection으로 호출한다.
+
+ */
+public class VirtualThreadTaskExecutor implements TaskExecutor {
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore semaphore;
+    private final int concurrencyLimit;
+
+    private TaskDecorator taskDecorator = runnable -> runnable;
+
+    public VirtualThreadTaskExecutor(String threadNamePrefix, int concurrencyLimit) {
+        this.threadFactory = virtualThreadFactory(threadNamePrefix);
+        this.semaphore = new Semaphore(concurrencyLimit, true);
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    // 현재 JVM에서 virtual thread를 사용할 수 있는지
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public void setTaskDecorator(TaskDecorator taskDecorator) {
+        this.taskDecorator = taskDecorator;
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        Runnable task = taskDecorator.decorate(runnable);
+        Thread thread = threadFactory.newThread(() -> {
+            try {
+                semaphore.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                task.run();
+            } finally {
+                semaphore.release();
+            }
+        });
+
+        if (thread == null) {
+            throw new TaskRejectedException("virtual thread를 만들 수 없습니다.");
+        }
+        thread.start();
+    }
+
+    private static ThreadFactory virtualThreadFactory(String threadNamePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+
+            Method name = builderType.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, threadNamePrefix, 0L);
+
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("virtual thread는 JDK 21 이상에서 사용할 수 있습니다.", e);
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.example.spring.batch.part3;
 
+import com.example.spring.batch.BatchTaskExecutors;
+import com.example.spring.batch.DagStep;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
 import org.springframework.batch.item.database.JpaCursorItemReader;
@@ -40,25 +44,45 @@ public class ItemReaderConfiguration {
     private final StepBuilderFactory stepBuilderFactory;
     private final DataSource dataSource;
     private final EntityManagerFactory entityManagerFactory;
+    private final JobRepository jobRepository;
+    private final JobExplorer jobExplorer;
+    private final BatchTaskExecutors taskExecutors;
 
     public ItemReaderConfiguration(JobBuilderFactory jobBuilderFactory,
                                    StepBuilderFactory stepBuilderFactory,
                                    DataSource dataSource,
-                                   EntityManagerFactory entityManagerFactory) {
+                                   EntityManagerFactory entityManagerFactory,
+                                   JobRepository jobRepository,
+                                   JobExplorer jobExplorer,
+                                   BatchTaskExecutors taskExecutors) {
         this.jobBuilderFactory = jobBuilderFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.dataSource = dataSource;
         this.entityManagerFactory = entityManagerFactory;
+        this.jobRepository = jobRepository;
+        this.jobExplorer = jobExplorer;
+        this.taskExecutors = taskExecutors;
     }
 
     @Bean
     public Job itemReaderJob() throws Exception {
         return this.jobBuilderFactory.get("itemReaderJob")
                 .incrementer(new RunIdIncrementer())
-                .start(this.customItemReaderStep())
-                .next(this.csvFileStep())
-                .next(this.jdbcStep())
-                .next(this.jpaStep())
+                // 네 step은 읽기만 하므로 서로 기다리지 않고 병렬로 실행된다.
+                .start(this.readerDagStep())
+                .build();
+    }
+
+    // step마다 읽고 쓰는 자원만 선언하면 순서와 병렬 실행은 DagStep이 정한다.
+    @Bean
+    public Step readerDagStep() throws Exception {
+        return DagStep.builder("readerDagStep", jobRepository)
+                .taskExecutor(taskExecutors.flow())
+                .jobExplorer(jobExplorer)
+                .step(this.customItemReaderStep()).reads("memory:person")
+                .step(this.csvFileStep()).reads("classpath:test.csv")
+                .step(this.jdbcStep()).reads("table:person")
+                .step(this.jpaStep()).reads("table:person")
                 .build();
     }
 
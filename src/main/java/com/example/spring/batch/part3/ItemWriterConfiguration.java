@@ -1,5 +1,6 @@
 package com.example.spring.batch.part3;
 
+import com.example.spring.batch.ChannelFlatFileItemWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
@@ -13,16 +14,12 @@ import org.springframework.batch.item.database.JdbcBatchItemWriter;
 import org.springframework.batch.item.database.JpaItemWriter;
 import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -113,27 +110,20 @@ public class ItemWriterConfiguration {
         return itemWriter;
     }
 
-    private ItemWriter<Person> csvFileItemWriter() throws Exception {
-        BeanWrapperFieldExtractor<Person> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"id", "name", "age", "address"});
-
-        DelimitedLineAggregator<Person> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
-        FlatFileItemWriter<Person> itemWriter = new FlatFileItemWriterBuilder<Person>()
-                .name("csvFileItemWriter")
-                .encoding("UTF-8")
-                .resource(new FileSystemResource("output/test-output.csv"))
-                .lineAggregator(lineAggregator)
-                .headerCallback(writer -> writer.write("id,이름,나이,거주지"))
-                .footerCallback(writer -> writer.write("-----------------\n"))
-                // 덮어씌기가 아닌 붙혀쓰기 + footer 끝에 개행문자 추가해야함
-                .append(true)
-                .build();
-        itemWriter.afterPropertiesSet();
+    // BeanWrapperFieldExtractor + DelimitedLineAggregator 대신 필드를 ByteBuffer에 바로 인코딩해서 FileChannel로 쓴다.
+    private ItemWriter<Person> csvFileItemWriter() {
+        ChannelFlatFileItemWriter<Person> itemWriter = new ChannelFlatFileItemWriter<>(
+                Paths.get("output/test-output.csv"),
+                "csvFileItemWriter",
+                (person, line) -> line.append(person.getId()).append(',')
+                        .append(person.getName()).append(',')
+                        .append(person.getAge()).append(',')
+                        .append(person.getAddress()));
+        itemWriter.setHeader("id,이름,나이,거주지");
+        itemWriter.setFooter("-----------------\n");
+        // 덮어씌기가 아닌 붙혀쓰기 + footer 끝에 개행문자 추가해야함
+        itemWriter.setAppend(true);
 
-        System.out.println();
         return itemWriter;
     }
 
@@ -0,0 +1,93 @@
+package com.example.spring.batch.part4;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ItemWriter;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/*
+
+    ItemProcessor 없이 chunk 전체를 기본형 배열로 옮겨서 UserLevelEvaluator로 한 번에 판별하고
+    등급이 바뀌는 id만 UserLevelUpItemWriter로 update 하는 ItemWriter
+    배열은 chunk마다 재사용하므로 multi-thread step에서는 사용하지 않는다.
+
+    processor가 없어서 chunk 전체가 writer로 오기 때문에 등급이 바뀌지 않는 user는
+    write count에서 빼고 filter count로 옮긴다. jvm 모드, sql 모드와 같은 건수가 남는다.
+
+ */
+public class ColumnarUserLevelUpItemWriter implements ItemWriter<UserTotalAmount> {
+
+    private final UserLevelUpItemWriter<UserTotalAmount> delegate;
+
+    private long[] ids = new long[0];
+    private byte[] levels = new byte[0];
+    private long[] totalAmounts = new long[0];
+    private long[] changedIds = new long[0];
+    private byte[] changedLevels = new byte[0];
+    private byte[] changedFromLevels = new byte[0];
+
+    public ColumnarUserLevelUpItemWriter(DataSource dataSource) {
+        this(new UserLevelUpItemWriter<>(dataSource));
+    }
+
+    ColumnarUserLevelUpItemWriter(UserLevelUpItemWriter<UserTotalAmount> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void write(List<? extends UserTotalAmount> items) throws Exception {
+        int changed = evaluate(items);
+
+        delegate.write(changedIds, changedFromLevels, changedLevels, changed);
+        countFiltered(items.size() - changed);
+    }
+
+    // chunk를 배열로 옮기고 등급이 바뀌는 user를 changedIds, changedFromLevels, changedLevels 앞쪽에 채운다.
+    int evaluate(List<? extends UserTotalAmount> items) {
+        int size = items.size();
+        ensureCapacity(size);
+
+        for (int i = 0; i < size; i++) {
+            UserTotalAmount item = items.get(i);
+            ids[i] = item.getId();
+            levels[i] = (byte) item.getLevel().ordinal();
+            totalAmounts[i] = item.getTotalAmount();
+        }
+
+        int changed = UserLevelEvaluator.evaluate(ids, levels, totalAmounts, size, changedIds, changedLevels);
+
+        // changedIds는 ids에서 순서를 유지한 일부이므로 한 번 훑어서 변경 전 등급을 찾는다.
+        for (int i = 0, j = 0; j < changed; i++) {
+            if (ids[i] == changedIds[j]) {
+                changedFromLevels[j++] = levels[i];
+            }
+        }
+        return changed;
+    }
+
+    // chunk가 롤백되면 TaskletStep이 write, filter count를 chunk 시작 전 값으로 되돌린다.
+    private void countFiltered(int filtered) {
+        StepContext context = StepSynchronizationManager.getContext();
+        if (context == null || filtered == 0) {
+            return;
+        }
+        StepExecution stepExecution = context.getStepExecution();
+        stepExecution.setFilterCount(stepExecution.getFilterCount() + filtered);
+        stepExecution.setWriteCount(stepExecution.getWriteCount() - filtered);
+    }
+
+    private void ensureCapacity(int size) {
+        if (ids.length >= size) {
+            return;
+        }
+        ids = new long[size];
+        levels = new byte[size];
+        totalAmounts = new long[size];
+        changedIds = new long[size];
+        changedLevels = new byte[size];
+        changedFromLevels = new byte[size];
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.spring.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+
+/*
+
+    성능 측정용 user, orders 데이터를 만드는 Job
+    SaveUserTasklet의 고정된 4구간 데이터 대신 분포를 가진 데이터를 원하는 크기로 만든다.
+
+    job parameter (모두 선택)
+    - users : user 수, 기본 40000
+    - distribution : user별 주문 수 분포 zipf, lognormal, 기본 zipf
+    - maxOrders : user 1명의 최대 주문 수, 기본 100
+    - startDate, days : 주문일 범위, 기본 2020-11-01부터 61일
+    - seed : 같은 seed면 같은 데이터, 기본 1
+    - slice : 한 번에 커밋할 주문 수, 기본 10000
+
+    ex) --job.name=generateUserJob users=5000000 distribution=lognormal seed=42
+
+ */
+@Slf4j
+@Configuration
+public class GenerateUserConfiguration {
+
+    private final String JOB_NAME = "generateUserJob";
+    private final DataSource dataSource;
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+
+    public GenerateUserConfiguration(DataSource dataSource,
+                                     JobBuilderFactory jobBuilderFactory,
+                                     StepBuilderFactory stepBuilderFactory) {
+        this.dataSource = dataSource;
+        this.jobBuilderFactory = jobBuilderFactory;
+        this.stepBuilderFactory = stepBuilderFactory;
+    }
+
+    @Bean(JOB_NAME)
+    public Job generateUserJob() {
+        return this.jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(this.generateUserStep(null, null, null, null, null, null, null))
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_generateUserStep")
+    @JobScope
+    public Step generateUserStep(@Value("#{jobParameters[users] ?: '40000'}") String users,
+                                 @Value("#{jobParameters[distribution] ?: 'zipf'}") String distribution,
+                                 @Value("#{jobParameters[maxOrders] ?: '100'}") String maxOrders,
+                                 @Value("#{jobParameters[startDate] ?: '2020-11-01'}") String startDate,
+                                 @Value("#{jobParameters[days] ?: '61'}") String days,
+                                 @Value("#{jobParameters[seed] ?: '1'}") String seed,
+                                 @Value("#{jobParameters[slice] ?: '10000'}") String slice) {
+        UserOrderGenerator generator = new UserOrderGenerator(
+                Long.parseLong(seed),
+                distribution,
+                Integer.parseInt(maxOrders),
+                LocalDate.parse(startDate),
+                Integer.parseInt(days));
+
+        return this.stepBuilderFactory.get(JOB_NAME + "_generateUserStep")
+                .tasklet(new GenerateUserTasklet(dataSource, generator, Long.parseLong(users), Integer.parseInt(slice)))
+                .build();
+    }
+}
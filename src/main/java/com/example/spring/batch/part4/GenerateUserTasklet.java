@@ -0,0 +1,96 @@
+package com.example.spring.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/*
+
+    UserOrderGenerator로 만든 user, orders를 UserOrderBulkWriter로 적재하는 Tasklet
+    전체 목록을 메모리에 만들지 않고 execute 1번에 주문 sliceSize 건 정도를 만들어 insert 하고 커밋한다.
+    메모리에는 slice 1개(sliceSize + user 1명의 최대 주문 수)만 남으므로 주문 수천만 건도 만들 수 있다.
+
+    SaveUserTasklet과 같이 id 블록 시작값과 진행 위치(user 번호, 적재한 주문 수)를 StepExecutionContext에 저장한다.
+    user 값은 seed와 user 번호로만 결정되므로 재시작해도 같은 데이터가 이어서 적재된다.
+
+ */
+@Slf4j
+public class GenerateUserTasklet implements Tasklet {
+
+    private static final String NEXT_USER_KEY = "generateUser.nextUser";
+    private static final String ORDER_COUNT_KEY = "generateUser.orderCount";
+    private static final String FIRST_USER_ID_KEY = "generateUser.firstUserId";
+    private static final String FIRST_ORDER_ID_KEY = "generateUser.firstOrderId";
+
+    private final UserOrderBulkWriter bulkWriter;
+    private final UserOrderGenerator generator;
+    private final long users;
+    private final int sliceSize;
+
+    public GenerateUserTasklet(DataSource dataSource, UserOrderGenerator generator, long users, int sliceSize) {
+        this.bulkWriter = new UserOrderBulkWriter(dataSource);
+        this.generator = generator;
+        this.users = users;
+        this.sliceSize = sliceSize;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        if (!executionContext.containsKey(FIRST_USER_ID_KEY)) {
+            executionContext.putLong(FIRST_USER_ID_KEY, bulkWriter.nextUserId());
+            executionContext.putLong(FIRST_ORDER_ID_KEY, bulkWriter.nextOrderId());
+        }
+        long firstUserId = executionContext.getLong(FIRST_USER_ID_KEY);
+        long firstOrderId = executionContext.getLong(FIRST_ORDER_ID_KEY);
+
+        long nextUser = executionContext.getLong(NEXT_USER_KEY, 0L);
+        long orderCount = executionContext.getLong(ORDER_COUNT_KEY, 0L);
+
+        if (nextUser >= users) {
+            // MySQL의 alter table은 암묵적으로 커밋하므로 insert 한 slice와 다른 트랜잭션에서 실행
+            bulkWriter.restartIdentity(firstUserId + users, firstOrderId + orderCount);
+            logThroughput(stepExecution, orderCount);
+            return RepeatStatus.FINISHED;
+        }
+
+        int sliceOrders = 0;
+        while (nextUser < users && sliceOrders < sliceSize) {
+            SplittableRandom random = generator.random(nextUser);
+            long userId = firstUserId + nextUser;
+            bulkWriter.addUser(userId, "user" + nextUser);
+
+            int orders = generator.orderCount(random);
+            for (int i = 0; i < orders; i++) {
+                long amount = generator.amount(random);
+                LocalDate createdDate = generator.createdDate(random);
+                bulkWriter.addOrder(firstOrderId + orderCount, "item" + generator.itemNo(random), amount, createdDate, userId);
+                orderCount++;
+            }
+            sliceOrders += orders;
+            nextUser++;
+        }
+        contribution.incrementWriteCount(bulkWriter.flush());
+
+        executionContext.putLong(NEXT_USER_KEY, nextUser);
+        executionContext.putLong(ORDER_COUNT_KEY, orderCount);
+        return RepeatStatus.CONTINUABLE;
+    }
+
+    private void logThroughput(StepExecution stepExecution, long orderCount) {
+        long rows = stepExecution.getWriteCount();
+        long time = System.currentTimeMillis() - stepExecution.getStartTime().getTime();
+        log.info("user {}명, orders {}건 생성, {}millis, {}건/sec",
+                users, orderCount, time, time == 0 ? rows : rows * 1000 / time);
+    }
+}
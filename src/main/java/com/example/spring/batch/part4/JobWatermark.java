@@ -0,0 +1,32 @@
+package com.example.spring.batch.part4;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+// Job 실행 사이에 유지되어야 하는 high-water mark를 저장하는 제어 테이블
+@Getter
+@Entity
+@NoArgsConstructor
+public class JobWatermark {
+
+    // mark를 정할 때 id만 할당받고 아직 커밋되지 않은 주문이 있을 수 있으므로 다음 실행은 mark 아래 이만큼을 다시 읽는다.
+    public static final long LATE_COMMIT_WINDOW = 10_000;
+
+    @Id
+    private String name;
+
+    private long value;
+
+    public JobWatermark(String name, long value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    // 다음 실행에서 읽기 시작할 id, mark 아래 LATE_COMMIT_WINDOW 만큼 겹쳐서 늦게 커밋된 주문도 다시 읽는다.
+    public long rescanFrom() {
+        return Math.max(0, value - LATE_COMMIT_WINDOW);
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.spring.batch.part4;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface JobWatermarkRepository extends JpaRepository<JobWatermark, String> {
+}
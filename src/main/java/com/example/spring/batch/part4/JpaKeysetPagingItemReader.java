@@ -0,0 +1,80 @@
+package com.example.spring.batch.part4;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+
+    JpaPagingItemReader의 OFFSET 페이징을 keyset 페이징으로 바꾼 ItemReader
+    queryString은 :lastId 파라미터와 id 오름차순 정렬을 포함해야 한다.
+    ex) select u from User u where u.id > :lastId and u.id <= :maxId order by u.id
+
+ */
+public class JpaKeysetPagingItemReader<T> extends KeysetPagingItemReader<T> {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final String queryString;
+    private final Class<T> type;
+    private final Map<String, Object> parameterValues;
+    private final Function<T, Long> idExtractor;
+
+    private EntityManager entityManager;
+
+    public JpaKeysetPagingItemReader(EntityManagerFactory entityManagerFactory,
+                                     String queryString,
+                                     Class<T> type,
+                                     Map<String, Object> parameterValues,
+                                     Function<T, Long> idExtractor,
+                                     long startAfterId,
+                                     int pageSize,
+                                     String name) {
+        super(pageSize, startAfterId, name);
+        this.entityManagerFactory = entityManagerFactory;
+        this.queryString = queryString;
+        this.type = type;
+        this.parameterValues = new HashMap<>(parameterValues);
+        this.idExtractor = idExtractor;
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        super.doOpen();
+        this.entityManager = entityManagerFactory.createEntityManager();
+    }
+
+    @Override
+    protected List<T> doReadPage(long lastId, int pageSize) {
+        // 이전 페이지의 엔티티가 영속성 컨텍스트에 쌓이지 않도록
+        entityManager.clear();
+
+        TypedQuery<T> query = entityManager.createQuery(queryString, type)
+                .setParameter("lastId", lastId)
+                .setMaxResults(pageSize);
+        getParameterValues().forEach(query::setParameter);
+
+        return query.getResultList();
+    }
+
+    // 페이지마다 조회 조건을 바꿔야 하는 경우 (ex. 실행 중 maxId 변경) override
+    protected Map<String, Object> getParameterValues() {
+        return parameterValues;
+    }
+
+    @Override
+    protected long getId(T item) {
+        return idExtractor.apply(item);
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (entityManager != null) {
+            entityManager.close();
+        }
+        super.doClose();
+    }
+}
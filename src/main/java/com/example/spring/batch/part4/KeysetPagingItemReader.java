@@ -0,0 +1,100 @@
+package com.example.spring.batch.part4;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/*
+
+    OFFSET 페이징 대신 where id > :lastId order by id limit :pageSize 로 읽는 ItemReader
+    페이지 위치와 상관없이 페이지마다 비용이 같고, Writer가 앞쪽 row를 update 해도 건너뛰거나 중복되는 row가 없다.
+    ItemWriter로 넘긴 마지막 id를 ExecutionContext에 저장해서 재시작 시 정확히 그 다음부터 읽는다.
+
+ */
+public abstract class KeysetPagingItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> {
+
+    private static final String LAST_ID_KEY = "lastId";
+
+    private final int pageSize;
+    // 이 id 다음부터 읽는다, 파티션의 경우 minId - 1
+    private final long startAfterId;
+    private final Deque<T> page = new ArrayDeque<>();
+
+    private long lastId;
+    // 마지막 페이지까지 읽어서 null을 반환했는지
+    private boolean exhausted;
+
+    protected KeysetPagingItemReader(int pageSize, long startAfterId, String name) {
+        this.pageSize = pageSize;
+        this.startAfterId = startAfterId;
+        setName(name);
+    }
+
+    // lastId보다 큰 id를 오름차순으로 pageSize 만큼 조회
+    protected abstract List<T> doReadPage(long lastId, int pageSize);
+
+    protected abstract long getId(T item);
+
+    // ItemWriter로 넘긴 마지막 id
+    protected long getLastId() {
+        return lastId;
+    }
+
+    protected boolean isExhausted() {
+        return exhausted;
+    }
+
+    long getStartAfterId() {
+        return startAfterId;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        // 같은 Reader로 Job을 다시 실행해도 처음부터 읽도록 저장된 값이 없으면 초기화
+        this.lastId = executionContext.getLong(getExecutionContextKey(LAST_ID_KEY), this.startAfterId);
+        this.exhausted = false;
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        executionContext.putLong(getExecutionContextKey(LAST_ID_KEY), this.lastId);
+    }
+
+    @Override
+    protected T doRead() {
+        if (page.isEmpty()) {
+            page.addAll(doReadPage(this.lastId, this.pageSize));
+        }
+
+        T item = page.poll();
+        if (item != null) {
+            this.lastId = getId(item);
+        } else {
+            this.exhausted = true;
+        }
+        return item;
+    }
+
+    // lastId 이후부터 읽으므로 재시작 시 앞의 아이템을 다시 읽어서 건너뛸 필요가 없다.
+    @Override
+    protected void jumpToItem(int itemIndex) {
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        page.clear();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.spring.batch.part4;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+
+    chunk 하나에서 등급이 어떻게 바뀌었는지(NORMAL -> SILVER 등) 세고
+    writer 안에서 현재 StepExecutionContext에 더한다.
+    TaskletStep은 write 이후 같은 chunk 트랜잭션 안에서 StepExecutionContext를 저장하고
+    롤백되면 chunk 이전의 ExecutionContext로 되돌리므로 커밋된 건수만 남는다.
+
+    LevelUpJobExecutionListener가 Job 종료 시 모든 StepExecution의 값을 합산해서 보여준다.
+    StepExecution이 없는 Thread(remote chunking worker 등)에서는 기록하지 않는다.
+
+ */
+public class LevelTransitionCounter {
+
+    private static final String KEY_PREFIX = "levelTransition.";
+    private static final User.Level[] LEVELS = User.Level.values();
+
+    private final int[][] counts = new int[LEVELS.length][LEVELS.length];
+
+    public void add(User.Level from, User.Level to) {
+        counts[from.ordinal()][to.ordinal()]++;
+    }
+
+    public void record() {
+        StepContext context = StepSynchronizationManager.getContext();
+        if (context == null) {
+            return;
+        }
+        addTo(context.getStepExecution().getExecutionContext());
+    }
+
+    // "NORMAL -> SILVER" 형태의 key, 등급 순서대로 정렬
+    public static Map<String, Long> read(StepExecution stepExecution) {
+        Map<String, Long> transitions = new TreeMap<>();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        for (User.Level from : LEVELS) {
+            for (User.Level to : LEVELS) {
+                String key = key(from, to);
+                if (executionContext.containsKey(key)) {
+                    transitions.put(from + " -> " + to, executionContext.getLong(key));
+                }
+            }
+        }
+        return transitions;
+    }
+
+    private void addTo(ExecutionContext executionContext) {
+        // partition, multi-thread step에서 같은 StepExecutionContext에 동시에 더할 수 있으므로
+        synchronized (executionContext) {
+            for (User.Level from : LEVELS) {
+                for (User.Level to : LEVELS) {
+                    int count = counts[from.ordinal()][to.ordinal()];
+                    if (count > 0) {
+                        String key = key(from, to);
+                        executionContext.putLong(key, executionContext.getLong(key, 0L) + count);
+                    }
+                }
+            }
+        }
+    }
+
+    private static String key(User.Level from, User.Level to) {
+        return KEY_PREFIX + from + "." + to;
+    }
+}
@@ -3,10 +3,22 @@ package com.example.spring.batch.part4;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
 
 import java.time.LocalDate;
-import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
 
+/*
+
+    Job 종료 시 회원등급 업데이트 결과를 보여주는 Listener
+    등급이 바뀐 user를 모두 읽지 않고 StepExecution의 건수와 count 쿼리만 사용한다.
+
+    - step별 read / write / filter / skip 건수, 처리 시간, 초당 처리 건수
+    - 등급 변경 건수 (NORMAL -> SILVER 등), LevelTransitionCounter가 기록한 값
+      (sql 모드처럼 UserLevelUpItemWriter를 거치지 않는 step은 기록되지 않는다.)
+
+ */
 @Slf4j
 public class LevelUpJobExecutionListener implements JobExecutionListener {
 
@@ -24,16 +36,48 @@ public class LevelUpJobExecutionListener implements JobExecutionListener {
 
     @Override
     public void afterJob(JobExecution jobExecution) {
-        Collection<User> users = userRepository.findALlByUpdatedDate(LocalDate.now());
+        long levelUpCount = userRepository.countByUpdatedDate(LocalDate.now());
 
         // Job에 실행된 시간을 측정
         long time = jobExecution.getEndTime().getTime() - jobExecution.getStartTime().getTime();
         log.info("----------------------------");
         log.info("회원등급 업데이트 배치 프로그램");
         log.info("----------------------------");
-        log.info("총 데이터 처리 : {}건" ,users.size());
+        log.info("총 데이터 처리 : {}건", levelUpCount);
         log.info("총 처리 시간 : {}millis", time);
         log.info("----------------------------");
 
+        Map<String, Long> transitions = new TreeMap<>();
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            logStep(stepExecution);
+            LevelTransitionCounter.read(stepExecution).forEach((transition, count) ->
+                    transitions.merge(transition, count, Long::sum));
+        }
+        log.info("----------------------------");
+
+        transitions.forEach((transition, count) -> log.info("등급 변경 {} : {}건", transition, count));
+        if (!transitions.isEmpty()) {
+            log.info("----------------------------");
+        }
+    }
+
+    private void logStep(StepExecution stepExecution) {
+        long time = stepExecution.getEndTime() == null || stepExecution.getStartTime() == null
+                ? 0
+                : stepExecution.getEndTime().getTime() - stepExecution.getStartTime().getTime();
+
+        log.info("{} [{}] read {}, write {}, filter {}, skip {}, {}millis, {}건/sec",
+                stepExecution.getStepName(),
+                stepExecution.getStatus(),
+                stepExecution.getReadCount(),
+                stepExecution.getWriteCount(),
+                stepExecution.getFilterCount(),
+                stepExecution.getSkipCount(),
+                time,
+                throughput(Math.max(stepExecution.getReadCount(), stepExecution.getWriteCount()), time));
+    }
+
+    private long throughput(long count, long millis) {
+        return millis == 0 ? count : count * 1000 / millis;
     }
 }
@@ -0,0 +1,12 @@
+package com.example.spring.batch.part4;
+
+// UserLevelUpItemWriter가 update 할 때 필요한 값, User 엔티티와 UserTotalAmount 모두 사용할 수 있도록
+public interface LevelUpTarget {
+
+    Long getId();
+
+    // 등급 변경 전 현재 등급, 실행 결과 보고용
+    User.Level getLevel();
+
+    User.Level nextLevel();
+}
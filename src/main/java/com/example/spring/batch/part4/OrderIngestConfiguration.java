@@ -0,0 +1,88 @@
+package com.example.spring.batch.part4;
+
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+
+/*
+
+    이미 저장된 user의 주문을 csv 파일에서 읽어서 추가하는 Job
+    OrderIngestItemWriter가 chunk 트랜잭션 안에서 orders insert, user.total_amount, daily_order_stats를 같이 갱신한다.
+    없는 user의 주문이 있으면 그 chunk는 롤백되고 step이 실패한다. 재시작하면 커밋된 줄 다음부터 읽는다.
+
+    job parameter
+    - input : 주문 csv 파일 경로 (필수), 첫 줄은 header
+      user_id,item_name,amount,created_date
+      1,item1,1000,2020-11-01
+
+    ex) --job.name=orderIngestJob input=/data/orders-20201101.csv
+
+ */
+@Configuration
+public class OrderIngestConfiguration {
+
+    private final String JOB_NAME = "orderIngestJob";
+    private final int CHUNK = 1000;
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final DataSource dataSource;
+
+    public OrderIngestConfiguration(JobBuilderFactory jobBuilderFactory,
+                                    StepBuilderFactory stepBuilderFactory,
+                                    DataSource dataSource) {
+        this.jobBuilderFactory = jobBuilderFactory;
+        this.stepBuilderFactory = stepBuilderFactory;
+        this.dataSource = dataSource;
+    }
+
+    @Bean(JOB_NAME)
+    public Job orderIngestJob() throws Exception {
+        return this.jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(this.orderIngestStep())
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_orderIngestStep")
+    public Step orderIngestStep() throws Exception {
+        return this.stepBuilderFactory.get(JOB_NAME + "_orderIngestStep")
+                .<UserOrder, UserOrder>chunk(CHUNK)
+                .reader(orderItemReader(null))
+                .writer(new OrderIngestItemWriter(dataSource))
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_orderItemReader")
+    @StepScope
+    FlatFileItemReader<UserOrder> orderItemReader(@Value("#{jobParameters[input]}") String input) throws Exception {
+        FlatFileItemReader<UserOrder> itemReader = new FlatFileItemReaderBuilder<UserOrder>()
+                .name(JOB_NAME + "_orderItemReader")
+                .encoding("UTF-8")
+                .resource(new FileSystemResource(input))
+                // header
+                .linesToSkip(1)
+                .delimited()
+                .names("userId", "itemName", "amount", "createdDate")
+                .fieldSetMapper(fieldSet -> new UserOrder(
+                        fieldSet.readLong("userId"),
+                        fieldSet.readString("itemName"),
+                        fieldSet.readLong("amount"),
+                        LocalDate.parse(fieldSet.readString("createdDate"))))
+                .build();
+        itemReader.afterPropertiesSet();
+
+        return itemReader;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.spring.batch.part4;
+
+import com.example.spring.batch.part5.DailyOrderStatsWriter;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+
+    주문을 추가하면서 user.total_amount를 같은 chunk 트랜잭션에서 더하는 ItemWriter
+    orders insert와 total_amount update가 함께 커밋되거나 함께 롤백되므로 합계가 어긋나지 않는다.
+
+    - chunk 안의 주문은 user별로 먼저 합산해서 user 1명당 update 1번
+    - total_amount = total_amount + ? 로 더하기 때문에 다른 Thread가 같은 user에 동시에 추가해도 값을 덮어쓰지 않는다.
+    - update는 user id 순서로 실행해서 동시에 실행되는 chunk끼리 row lock 순서가 엇갈리지 않도록
+    - user row lock을 먼저 잡고 orders에 insert 한다.
+      UserTotalReconcileTasklet도 user를 update 하면서 orders를 읽으므로 lock 순서가 user -> orders로 같아서 deadlock이 나지 않는다.
+    - daily_order_stats rollup도 같은 트랜잭션에서 날짜별로 더한다.
+
+ */
+public class OrderIngestItemWriter implements ItemWriter<UserOrder> {
+
+    private static final String INSERT_ORDER_SQL =
+            "insert into orders (item_name, amount, created_date, user_id) values (?, ?, ?, ?)";
+    private static final String ADD_TOTAL_AMOUNT_SQL = "update user set total_amount = total_amount + ? where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DailyOrderStatsWriter dailyOrderStatsWriter;
+
+    public OrderIngestItemWriter(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.dailyOrderStatsWriter = new DailyOrderStatsWriter(dataSource);
+    }
+
+    @Override
+    public void write(List<? extends UserOrder> items) throws Exception {
+        List<Object[]> orders = new ArrayList<>(items.size());
+        Map<Long, Long> totalAmounts = new TreeMap<>();
+        Map<LocalDate, long[]> dailyAmounts = new HashMap<>();
+
+        for (UserOrder item : items) {
+            orders.add(new Object[]{item.getItemName(), item.getAmount(), Date.valueOf(item.getCreatedDate()), item.getUserId()});
+            totalAmounts.merge(item.getUserId(), item.getAmount(), Long::sum);
+            DailyOrderStatsWriter.accumulate(dailyAmounts, item.getCreatedDate(), item.getAmount());
+        }
+
+        List<Object[]> updates = new ArrayList<>(totalAmounts.size());
+        totalAmounts.forEach((userId, amount) -> updates.add(new Object[]{amount, userId}));
+        int[] updated = jdbcTemplate.batchUpdate(ADD_TOTAL_AMOUNT_SQL, updates);
+
+        // 없는 user의 주문이면 롤백해서 다른 user의 total_amount만 더해지지 않도록
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                throw new IllegalStateException("주문을 추가할 user가 없습니다 : " + updates.get(i)[1]);
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_ORDER_SQL, orders);
+
+        dailyOrderStatsWriter.add(dailyAmounts);
+    }
+}
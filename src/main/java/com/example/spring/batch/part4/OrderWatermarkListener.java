@@ -0,0 +1,66 @@
+package com.example.spring.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+/*
+
+    증분 등급 상향을 위한 orders.id high-water mark 관리
+    beforeStep : 지난 실행에서 저장한 mark(from)와 현재 orders.id 최댓값(to)을 StepExecutionContext에 저장
+                 재시작이면 이미 저장된 구간을 그대로 사용한다.
+                 max(id)를 읽을 때 id만 할당받고 커밋 전인 주문이 있을 수 있으므로
+                 from은 mark 아래 JobWatermark.LATE_COMMIT_WINDOW 만큼 겹쳐서 다시 읽는다. 등급 상향은 여러 번 해도 결과가 같다.
+    save       : UserTotalAmountItemReader가 마지막 chunk의 ItemStream.update에서 호출,
+                 마지막 chunk와 같은 트랜잭션에서 to를 JobWatermark 테이블에 저장해서 다음 실행의 from이 된다.
+                 chunk가 롤백되면 mark도 저장되지 않는다.
+
+ */
+@Slf4j
+public class OrderWatermarkListener implements StepExecutionListener {
+
+    public static final String FROM_KEY = "orderWatermark.from";
+    public static final String TO_KEY = "orderWatermark.to";
+
+    private final String name;
+    private final JobWatermarkRepository jobWatermarkRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public OrderWatermarkListener(String name, JobWatermarkRepository jobWatermarkRepository, DataSource dataSource) {
+        this.name = name;
+        this.jobWatermarkRepository = jobWatermarkRepository;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        if (executionContext.containsKey(TO_KEY)) {
+            return;
+        }
+
+        long from = jobWatermarkRepository.findById(name)
+                .map(JobWatermark::rescanFrom)
+                .orElse(0L);
+        Long to = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from orders", Long.class);
+
+        executionContext.putLong(FROM_KEY, from);
+        executionContext.putLong(TO_KEY, to);
+        log.info("orders.id {} ~ {} 구간에 주문이 있는 user만 등급 판별", from, to);
+    }
+
+    // 진행 중인 chunk 트랜잭션에 참여해서 저장
+    public void save(ExecutionContext executionContext) {
+        jobWatermarkRepository.save(new JobWatermark(name, executionContext.getLong(TO_KEY)));
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        return stepExecution.getExitStatus();
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.spring.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+    chunk step은 chunk N의 write가 커밋될 때까지 chunk N+1을 읽지 않는다.
+    이 Tasklet은 별도 Thread에서 다음 페이지를 미리 읽고 processor까지 실행해서 최대 depth 개의 chunk를 큐에 쌓아두고,
+    Tasklet을 반복 실행할 때마다 큐에서 chunk 하나를 꺼내 write 한 뒤 step 트랜잭션으로 커밋한다.
+
+    StepExecutionContext에는 커밋된 chunk의 마지막 id만 저장하므로
+    미리 읽었지만 커밋되지 않은 chunk는 재시작 시 다시 읽는다.
+    Reader는 keyset 조회(doReadPage)만 사용하고 ItemStream으로 등록하지 않는다.
+
+ */
+@Slf4j
+public class PipelinedChunkTasklet<I, O> implements Tasklet, StepExecutionListener {
+
+    private static final String LAST_ID_KEY = "pipeline.lastId";
+    // 큐가 가득 찼거나 비었을 때 상대 Thread의 종료 여부를 확인하는 주기
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    // 미리 읽는 Thread가 다음 chunk를 만들 때까지 기다리는 최대 시간
+    private static final long POLL_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
+    private final KeysetPagingItemReader<I> reader;
+    private final ItemProcessor<I, O> processor;
+    private final ItemWriter<O> writer;
+    private final int depth;
+    private final TaskExecutor taskExecutor;
+
+    private BlockingQueue<PipelinedChunk<O>> chunks;
+    private volatile boolean stopped;
+    private volatile boolean readAheadDone;
+
+    public PipelinedChunkTasklet(KeysetPagingItemReader<I> reader,
+                                 ItemProcessor<I, O> processor,
+                                 ItemWriter<O> writer,
+                                 int depth,
+                                 TaskExecutor taskExecutor) {
+        this.reader = reader;
+        this.processor = processor;
+        this.writer = writer;
+        this.depth = depth;
+        this.taskExecutor = taskExecutor;
+    }
+
+    // TaskletStep이 StepExecutionListener인 tasklet을 listener로 등록하므로 step에 따로 등록하지 않는다.
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        long committedLastId = stepExecution.getExecutionContext().getLong(lastIdKey(), reader.getStartAfterId());
+
+        this.chunks = new ArrayBlockingQueue<>(depth);
+        this.stopped = false;
+        this.readAheadDone = false;
+        taskExecutor.execute(() -> readAhead(committedLastId));
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        PipelinedChunk<O> chunk = poll();
+        if (chunk.failure instanceof Error) {
+            throw (Error) chunk.failure;
+        }
+        if (chunk.failure != null) {
+            throw (Exception) chunk.failure;
+        }
+        if (chunk.isEnd()) {
+            return RepeatStatus.FINISHED;
+        }
+
+        if (!chunk.items.isEmpty()) {
+            writer.write(chunk.items);
+        }
+
+        StepContributions.incrementReadCount(contribution, chunk.readCount);
+        contribution.incrementFilterCount(chunk.readCount - chunk.items.size());
+        contribution.incrementWriteCount(chunk.items.size());
+
+        // 이 값은 step 트랜잭션과 같이 커밋되고, 롤백되면 이전 값으로 되돌린다.
+        ExecutionContext executionContext = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+        long previousLastId = executionContext.getLong(lastIdKey(), reader.getStartAfterId());
+        executionContext.putLong(lastIdKey(), chunk.lastId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        executionContext.putLong(lastIdKey(), previousLastId);
+                    }
+                }
+            });
+        }
+
+        return RepeatStatus.CONTINUABLE;
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        // 실패로 끝난 경우 미리 읽던 Thread를 멈추고 큐를 비워서 대기 중인 offer도 끝나게 한다.
+        this.stopped = true;
+        chunks.clear();
+        return null;
+    }
+
+    // 별도 Thread에서 커밋된 마지막 id 이후를 읽고 processor까지 실행해서 큐에 넣는다.
+    private void readAhead(long lastId) {
+        try {
+            while (!stopped) {
+                List<I> page = reader.doReadPage(lastId, reader.getPageSize());
+                if (page.isEmpty()) {
+                    offer(PipelinedChunk.end());
+                    return;
+                }
+
+                List<O> items = new ArrayList<>(page.size());
+                for (I item : page) {
+                    O processed = processor.process(item);
+                    if (processed != null) {
+                        items.add(processed);
+                    }
+                }
+                lastId = reader.getId(page.get(page.size() - 1));
+
+                offer(new PipelinedChunk<>(items, page.size(), lastId, null));
+            }
+        } catch (Throwable e) {
+            // Error도 write Thread로 넘겨서 step이 실패하게 한다.
+            log.error("{} 미리 읽기 실패", reader.getExecutionContextKey(LAST_ID_KEY), e);
+            offer(new PipelinedChunk<>(Collections.emptyList(), 0, lastId, e));
+        } finally {
+            readAheadDone = true;
+        }
+    }
+
+    // 미리 읽는 Thread가 chunk를 넣지 못하고 끝났거나 POLL_TIMEOUT_MILLIS 안에 chunk가 오지 않으면 실패시킨다.
+    private PipelinedChunk<O> poll() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + POLL_TIMEOUT_MILLIS;
+        while (true) {
+            // 종료 여부를 먼저 읽어야 종료 직전에 넣은 chunk를 놓치지 않는다.
+            boolean done = readAheadDone;
+            PipelinedChunk<O> chunk = chunks.poll(OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (chunk != null) {
+                return chunk;
+            }
+            if (done) {
+                throw new IllegalStateException(lastIdKey() + " 미리 읽는 Thread가 chunk 없이 종료되었습니다.");
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(lastIdKey() + " " + POLL_TIMEOUT_MILLIS + "ms 동안 다음 chunk를 읽지 못했습니다.");
+            }
+        }
+    }
+
+    private void offer(PipelinedChunk<O> chunk) {
+        try {
+            while (!stopped && !chunks.offer(chunk, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                // 큐가 가득 차면 write가 chunk를 꺼낼 때까지 대기
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String lastIdKey() {
+        return reader.getExecutionContextKey(LAST_ID_KEY);
+    }
+
+    // 미리 읽고 처리한 chunk 하나, readCount가 0이면 마지막을 뜻한다.
+    private static class PipelinedChunk<O> {
+        private final List<O> items;
+        private final int readCount;
+        private final long lastId;
+        private final Throwable failure;
+
+        PipelinedChunk(List<O> items, int readCount, long lastId, Throwable failure) {
+            this.items = items;
+            this.readCount = readCount;
+            this.lastId = lastId;
+            this.failure = failure;
+        }
+
+        static <O> PipelinedChunk<O> end() {
+            return new PipelinedChunk<>(Collections.emptyList(), 0, 0, null);
+        }
+
+        boolean isEnd() {
+            return readCount == 0;
+        }
+    }
+}
@@ -1,79 +1,118 @@
 package com.example.spring.batch.part4;
 
-import com.example.spring.batch.part5.Orders;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
 
+import javax.sql.DataSource;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Random;
 
+/*
+
+    테스트용 user, orders 적재 Tasklet
+    JPA saveAll은 IDENTITY 전략 때문에 user, orders를 1건씩 insert 하므로
+    UserOrderBulkWriter로 미리 할당한 id를 사용해 JDBC batch insert 한다.
+
+    - execute 1번에 sliceSize 명의 user를 insert 하고 커밋(CONTINUABLE)
+    - 모두 적재하면 auto increment 값을 할당한 id 다음으로 맞추고 FINISHED
+    - 진행 위치와 할당한 id 블록 시작값은 StepExecutionContext에 저장하므로 실패 시 커밋된 slice 다음부터 재시작
+    - 기존 shuffle은 seed가 고정된 순서로 바꿔서 재시작해도 같은 순서로 적재된다.
+
+ */
+@Slf4j
 public class SaveUserTasklet implements Tasklet {
 
-    private final int SIZE =10_000;
-    private final UserRepository userRepository;
+    private static final int SIZE = 10_000;
+    private static final int DEFAULT_SLICE_SIZE = 5_000;
+    private static final long SHUFFLE_SEED = 20201101L;
+
+    private static final String OFFSET_KEY = "saveUser.offset";
+    private static final String FIRST_USER_ID_KEY = "saveUser.firstUserId";
+    private static final String FIRST_ORDER_ID_KEY = "saveUser.firstOrderId";
+
+    // 등급 구간별 주문 금액, 주문일
+    private static final int[] AMOUNTS = {1_000, 200_000, 300_000, 500_000};
+    private static final LocalDate[] CREATED_DATES = {
+            LocalDate.of(2020, 11, 1),
+            LocalDate.of(2020, 12, 2),
+            LocalDate.of(2020, 11, 3),
+            LocalDate.of(2020, 11, 4)
+    };
+
+    private final UserOrderBulkWriter bulkWriter;
+    private final int sliceSize;
+    private final int[] order = shuffledOrder(SIZE * AMOUNTS.length);
+
+    public SaveUserTasklet(DataSource dataSource) {
+        this(dataSource, DEFAULT_SLICE_SIZE);
+    }
 
-    public SaveUserTasklet(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public SaveUserTasklet(DataSource dataSource, int sliceSize) {
+        this.bulkWriter = new UserOrderBulkWriter(dataSource);
+        this.sliceSize = sliceSize;
     }
 
     @Override
     public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
-        List<User> users = creatUsers();
-        Collections.shuffle(users);
-        userRepository.saveAll(users);
-        return RepeatStatus.FINISHED;
-    }
+        StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
 
-    private List<User> creatUsers() {
-        List<User> users = new ArrayList<>();
-        for (int i = 0; i < SIZE; i++) {
-            users.add(User.builder()
-                    .orders(Collections.singletonList(Orders.builder()
-                            .amount(1_000)
-                            .createdDate(LocalDate.of(2020, 11, 1))
-                            .itemName("item" + i)
-                            .build()))
-                    .username("test username" + i)
-                    .build());
+        // 첫 실행에만 id 블록을 할당, 재시작 시에는 저장된 값을 그대로 사용
+        if (!executionContext.containsKey(FIRST_USER_ID_KEY)) {
+            executionContext.putLong(FIRST_USER_ID_KEY, bulkWriter.nextUserId());
+            executionContext.putLong(FIRST_ORDER_ID_KEY, bulkWriter.nextOrderId());
         }
+        long firstUserId = executionContext.getLong(FIRST_USER_ID_KEY);
+        long firstOrderId = executionContext.getLong(FIRST_ORDER_ID_KEY);
 
-        for (int i = 0; i < SIZE; i++) {
-            users.add(User.builder()
-                    .orders(Collections.singletonList(Orders.builder()
-                            .amount(200_000)
-                            .createdDate(LocalDate.of(2020, 12, 2))
-                            .itemName("item" + i)
-                            .build()))
-                    .username("test username" + i)
-                    .build());
+        int offset = executionContext.getInt(OFFSET_KEY, 0);
+        if (offset >= order.length) {
+            // MySQL의 alter table은 암묵적으로 커밋하므로 insert 한 slice와 다른 트랜잭션에서 실행
+            bulkWriter.restartIdentity(firstUserId + order.length, firstOrderId + order.length);
+            logThroughput(stepExecution, stepExecution.getWriteCount());
+            return RepeatStatus.FINISHED;
         }
 
-        for (int i = 0; i < SIZE; i++) {
-            users.add(User.builder()
-                    .orders(Collections.singletonList(Orders.builder()
-                            .amount(300_000)
-                            .createdDate(LocalDate.of(2020, 11, 3))
-                            .itemName("item" + i)
-                            .build()))
-                    .username("test username" + i)
-                    .build());
-        }
+        int end = Math.min(offset + sliceSize, order.length);
 
-        for (int i = 0; i < SIZE; i++) {
-            users.add(User.builder()
-                    .orders(Collections.singletonList(Orders.builder()
-                            .amount(500_000)
-                            .createdDate(LocalDate.of(2020, 11, 4))
-                            .itemName("item" + i)
-                            .build()))
-                    .username("test username" + i)
-                    .build());
+        for (int position = offset; position < end; position++) {
+            int index = order[position];
+            int bucket = index / SIZE;
+            int i = index % SIZE;
+
+            long userId = firstUserId + position;
+            bulkWriter.addUser(userId, "test username" + i);
+            bulkWriter.addOrder(firstOrderId + position, "item" + i, AMOUNTS[bucket], CREATED_DATES[bucket], userId);
         }
+        int rows = bulkWriter.flush();
+        contribution.incrementWriteCount(rows);
+        executionContext.putInt(OFFSET_KEY, end);
+        return RepeatStatus.CONTINUABLE;
+    }
 
-        return users;
+    private void logThroughput(StepExecution stepExecution, long rows) {
+        long time = System.currentTimeMillis() - stepExecution.getStartTime().getTime();
+        log.info("user, orders {}건 적재, {}millis, {}건/sec", rows, time, time == 0 ? rows : rows * 1000 / time);
+    }
+
+    // Collections.shuffle 대신 seed가 고정된 Fisher-Yates
+    private static int[] shuffledOrder(int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(SHUFFLE_SEED);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
     }
 }
@@ -15,7 +15,7 @@ import java.util.Objects;
 @Getter
 @Entity
 @NoArgsConstructor
-public class User {
+public class User implements LevelUpTarget {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -25,9 +25,13 @@ public class User {
     @Enumerated(EnumType.STRING)
     private Level level = Level.NORMAL;
 
-//    private int totalAmount;
+    // 주문 금액 합계, 주문을 추가할 때 같은 트랜잭션에서 더한다. (OrderIngestItemWriter, UserOrderBulkWriter)
+    // 등급 판별은 orders를 읽지 않고 이 값만 사용한다. 어긋난 값은 reconcileUserTotalJob이 다시 계산한다.
+    private long totalAmount;
+
     // user는 n개의 orders를 가질 수 있으니까 OneToMany, user가 저장되면서 order를 같이 저장할 수 있도록 PERSIST
-    @OneToMany(cascade = CascadeType.PERSIST, fetch = FetchType.EAGER)
+    // 등급 판별에 orders가 필요 없으므로 LAZY
+    @OneToMany(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private List<Orders> orders;
 
@@ -37,20 +41,23 @@ public class User {
     public User(String username, List<Orders> orders) {
         this.username = username;
         this.orders = orders;
+        this.totalAmount = orders == null ? 0 : orders.stream()
+                .mapToLong(Orders::getAmount)
+                .sum();
     }
 
     public boolean availableLevelUp() {
         return Level.availableLevelUp(this.getLevel(), this.getTotalAmount());
     }
 
-    private int getTotalAmount() {
-        return this.orders.stream()
-                .mapToInt(Orders::getAmount)
-                .sum();
+    // 엔티티 상태를 변경하지 않고 상향될 등급만 계산
+    @Override
+    public Level nextLevel() {
+        return Level.getNextLevel(this.getTotalAmount());
     }
 
     public Level levelUp(){
-        Level nextLevel = Level.getNextLevel(this.getTotalAmount());
+        Level nextLevel = this.nextLevel();
 
         this.level = nextLevel;
         this.updatedDate = LocalDate.now();
@@ -72,7 +79,16 @@ public class User {
             this.nextLevel = nextLevel;
         }
 
-        private static boolean availableLevelUp(Level level, int totalAmount) {
+        // SQL 등 엔티티 밖에서 등급 규칙을 그대로 사용하기 위해
+        public int getNextAmount() {
+            return nextAmount;
+        }
+
+        public Level getNextLevel() {
+            return nextLevel;
+        }
+
+        static boolean availableLevelUp(Level level, long totalAmount) {
             if (Objects.isNull(level)){
                 return false;
             }
@@ -85,7 +101,7 @@ public class User {
            return totalAmount >= level.nextAmount;
         }
 
-        private static Level getNextLevel(int totalAmount) {
+        static Level getNextLevel(long totalAmount) {
             if (totalAmount >= Level.VIP.nextAmount){
                 return VIP;
             }
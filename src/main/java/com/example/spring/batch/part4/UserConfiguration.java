@@ -1,38 +1,43 @@
 package com.example.spring.batch.part4;
 
+import com.example.spring.batch.BatchTaskExecutors;
+import com.example.spring.batch.ChannelFlatFileItemWriter;
+import com.example.spring.batch.part5.DailyOrderStatsCatchUpTasklet;
+import com.example.spring.batch.part5.DayBucketOrderAggregator;
+import com.example.spring.batch.part5.DayBucketOrderStatisticsItemReader;
 import com.example.spring.batch.part5.JobParametersDecide;
+import com.example.spring.batch.part5.MonthlyOrderStatisticsItemReader;
+import com.example.spring.batch.part5.MonthlyOrderStatisticsPartitioner;
 import com.example.spring.batch.part5.OrderStatistics;
+import com.example.spring.batch.part5.OrderStatisticsRowMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.step.builder.SimpleStepBuilder;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
 import org.springframework.batch.item.database.Order;
 import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
+import java.nio.file.Paths;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /*
 
@@ -48,23 +53,34 @@ public class UserConfiguration {
     // 성능측정을 위해 JOB_NAME을 설정, 같은 JOB을 복사해서 쓸 것이기 때문에 Bean 등에서 구분할 수 있게
     private final String JOB_NAME = "userJob";
     private final int CHUNK = 1000;
+    // userLevelUpStep 실행 방식, 기본은 user를 읽어서 JVM에서 등급을 판별한다.
+    private final String SQL_MODE = "sql";
+    private final String COLUMNAR_MODE = "columnar";
+    // orderStatisticsStep 실행 방식, 기본은 daily_order_stats rollup을 읽는다.
+    private final String STREAM_STATISTICS = "stream";
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final UserRepository userRepository;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
+    private final JobWatermarkRepository jobWatermarkRepository;
+    private final BatchTaskExecutors taskExecutors;
 
 
     public UserConfiguration(JobBuilderFactory jobBuilderFactory,
                              StepBuilderFactory stepBuilderFactory,
                              UserRepository userRepository,
                              EntityManagerFactory entityManagerFactory,
-                             DataSource dataSource) {
+                             DataSource dataSource,
+                             JobWatermarkRepository jobWatermarkRepository,
+                             BatchTaskExecutors taskExecutors) {
         this.jobBuilderFactory = jobBuilderFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.userRepository = userRepository;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
+        this.jobWatermarkRepository = jobWatermarkRepository;
+        this.taskExecutors = taskExecutors;
     }
 
     @Bean(JOB_NAME)
@@ -74,52 +90,124 @@ public class UserConfiguration {
                 // saveUserStep - tasklet으로 실행됨, 테스트를 하기 위해 user를 저장하는  스텝
                 .start(this.saveUserStep())
                 // user의 등급을 조절하는 userLevelUpStep - chunk로 실행됨, user의 level 상태를 변경하는 스텝
-                .next(this.userLevelUpStep())
+                // mode=sql 이면 DB 안에서 등급을 상향하는 Tasklet으로 실행된다.
+                // incremental=true 이면 지난 실행 이후 주문이 생긴 user만 등급을 판별한다.
+                .next(this.userLevelUpStep(null, null))
                 .listener(new LevelUpJobExecutionListener(userRepository))
                 // JobParametersDecide클래스의 오버라이딩한 decide메서드를 통해 해당 특정 조건에 따라 FlowExectionStatus가 리턴이 된다.
                 // 특정 조건 = 파라미터의 밸류가 있는지 확인
                 // 있으면 CONTINUE, 없으면 COMPLETED
-                .next(new JobParametersDecide("date"))
+                // date 대신 from, to(yyyy-MM)로 여러 달을 한 번에 집계할 수 있다.
+                .next(new JobParametersDecide("date", "from"))
                 // CONTUNE라면? 아래 to에 있는 orderStatisticsStep을 실행
+                // daily_order_stats rollup을 먼저 orders와 맞춘 뒤 rollup에서 일별 합계를 읽는다.
                 .on(JobParametersDecide.CONTINUE.getName())
-                .to(this.orderStatisticsStep(null, null))
+                .to(this.dailyOrderStatsCatchUpStep())
+                .next(this.orderStatisticsStep(null, null, null, null, null, null))
                 .build()
                 .build();
     }
 
+    // 지난 실행 이후 추가된 주문이 있는 날짜만 daily_order_stats를 다시 합산
+    @Bean(JOB_NAME + "_dailyOrderStatsCatchUpStep")
+    public Step dailyOrderStatsCatchUpStep() {
+        return this.stepBuilderFactory.get(JOB_NAME + "_dailyOrderStatsCatchUpStep")
+                .tasklet(new DailyOrderStatsCatchUpTasklet(dataSource, jobWatermarkRepository))
+                .build();
+    }
+
     @Bean(JOB_NAME + "_orderStatisticsStep")
     @JobScope
     public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date,
-                                    @Value("#{jobParameters[path]}") String path) throws Exception {
+                                    @Value("#{jobParameters[path]}") String path,
+                                    @Value("#{jobParameters[statistics]}") String statistics,
+                                    @Value("#{jobParameters[threads]}") String threads,
+                                    @Value("#{jobParameters[from]}") String from,
+                                    @Value("#{jobParameters[to]}") String to) throws Exception {
+        // 구간마다 커넥션을 하나씩 쓰므로 DataSource 커넥션 수를 넘지 않게
+        int threadCount = threads == null ? 1 : Math.min(Integer.parseInt(threads), taskExecutors.connectionBudget());
+
+        // from이 있으면 전체 기간을 한 번만 조회하고 월마다 파티션을 나눠 파일을 동시에 쓴다.
+        if (from != null) {
+            return monthlyOrderStatisticsManagerStep(
+                    YearMonth.parse(from), YearMonth.parse(to == null ? from : to), statistics, threadCount);
+        }
+
+        // statistics=stream 이면 group by 대신 orders를 커서로 한 번 읽어서 일별로 합산한다.
+        // threads=N 이면 orders.id 구간을 N개로 나눠 동시에 읽는다.
+        ItemReader<? extends OrderStatistics> itemReader = STREAM_STATISTICS.equals(statistics)
+                ? streamOrderStatisticsItemReader(date, threadCount)
+                : orderStatisticsItemReader(date);
+
         return this.stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep")
                 .<OrderStatistics, OrderStatistics>chunk(CHUNK)
-                .reader(orderStatisticsItemReader(date))
+                .reader(itemReader)
                 .writer(orderStatisticsItemWriter(date, path))
                 .build();
     }
 
-    // ItemReader에서 읽은 OrderStatistics 데이터를 기준으로 csv파일을 생성
-    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date, String path) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
+    private Step monthlyOrderStatisticsManagerStep(YearMonth from, YearMonth to, String statistics, int threads) throws Exception {
+        Supplier<List<OrderStatistics>> source;
+        if (STREAM_STATISTICS.equals(statistics)) {
+            DayBucketOrderAggregator aggregator = new DayBucketOrderAggregator(dataSource, from, to);
+            source = () -> aggregator.aggregate(taskExecutors.partition(), threads);
+        } else {
+            source = () -> rollupOrderStatistics(from, to);
+        }
 
-        String fileName = yearMonth.getYear() + "년_" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
+        // 월별 파티션은 partition Thread에서 실행해서 동시에 쓰는 파일 수도 커넥션 수 안으로 제한된다.
+        return this.stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep")
+                .partitioner(JOB_NAME + "_monthlyOrderStatisticsStep", new MonthlyOrderStatisticsPartitioner(from, to, source))
+                .step(monthlyOrderStatisticsStep())
+                .taskExecutor(taskExecutors.partition())
+                .build();
+    }
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"amount", "date"});
+    // 파티션 하나가 한 달치 통계 파일 하나를 쓴다.
+    @Bean(JOB_NAME + "_monthlyOrderStatisticsStep")
+    public Step monthlyOrderStatisticsStep() throws Exception {
+        return this.stepBuilderFactory.get(JOB_NAME + "_monthlyOrderStatisticsStep")
+                .<OrderStatistics, OrderStatistics>chunk(CHUNK)
+                .reader(monthlyOrderStatisticsItemReader(null, null))
+                .writer(monthlyOrderStatisticsItemWriter(null, null))
+                .build();
+    }
 
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
+    @Bean
+    @StepScope
+    MonthlyOrderStatisticsItemReader monthlyOrderStatisticsItemReader(@Value("#{stepExecutionContext[month]}") String month,
+                                                                      @Value("#{stepExecutionContext[amounts]}") String amounts) {
+        return new MonthlyOrderStatisticsItemReader(month, amounts, JOB_NAME + "_monthlyOrderStatisticsItemReader");
+    }
 
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-                .resource(new FileSystemResource(path + fileName))
-                .lineAggregator(lineAggregator)
-                .name(JOB_NAME + "_orderStatisticsItemWriter")
-                .encoding("UTF-8")
-                .headerCallback(writer -> writer.write("total_amount,date"))
-                .build();
+    @Bean
+    @StepScope
+    ChannelFlatFileItemWriter<OrderStatistics> monthlyOrderStatisticsItemWriter(@Value("#{stepExecutionContext[month]}") String month,
+                                                                                @Value("#{jobParameters[path]}") String path) {
+        return orderStatisticsItemWriter(month, path);
+    }
 
-        itemWriter.afterPropertiesSet();
+    // from ~ to 기간의 일별 합계를 daily_order_stats에서 한 번에 조회
+    private List<OrderStatistics> rollupOrderStatistics(YearMonth from, YearMonth to) {
+        return new JdbcTemplate(dataSource).query(
+                "select amount, order_date from daily_order_stats"
+                        + " where order_date >= ? and order_date <= ? order by order_date",
+                new OrderStatisticsRowMapper(),
+                from.atDay(1), to.atEndOfMonth());
+    }
+
+    // ItemReader에서 읽은 OrderStatistics 데이터를 기준으로 csv파일을 생성
+    // 금액, 날짜를 String 없이 ByteBuffer에 바로 인코딩해서 FileChannel로 쓴다.
+    private ChannelFlatFileItemWriter<OrderStatistics> orderStatisticsItemWriter(String date, String path) {
+        YearMonth yearMonth = YearMonth.parse(date);
+
+        String fileName = yearMonth.getYear() + "년_" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
+
+        ChannelFlatFileItemWriter<OrderStatistics> itemWriter = new ChannelFlatFileItemWriter<>(
+                Paths.get(path + fileName),
+                JOB_NAME + "_orderStatisticsItemWriter",
+                (item, line) -> line.append(item.getAmount()).append(',').append(item.getDate()));
+        itemWriter.setHeader("total_amount,date");
 
         return itemWriter;
 
@@ -127,6 +215,7 @@ public class UserConfiguration {
 
     // 월별 합산 금액으로 조회된 데이터를 OrderStatistics로 매핑 한 후 ItemWriter로 날림
     // JdbcPagingItemReader 사용
+    // orders를 group by 하지 않고 daily_order_stats에서 한 달치(최대 31건)만 읽는다.
     private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
         YearMonth yearMonth = YearMonth.parse(date);
 
@@ -136,21 +225,17 @@ public class UserConfiguration {
         parameters.put("endDate", yearMonth.atEndOfMonth());
 
         Map<String, Order> sortKey = new HashMap<>();
-        sortKey.put("created_date", Order.ASCENDING);
+        sortKey.put("order_date", Order.ASCENDING);
 
         JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
                 .dataSource(this.dataSource)
-                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
-                        .amount(rs.getString(1))
-                        .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
+                .rowMapper(new OrderStatisticsRowMapper())
                 .pageSize(CHUNK)
                 .name(JOB_NAME + "_orderStatisticsItemReader")
-                // GruopBy, Where 절을 통해 쿼리문 amount의 합계와 crated_date를 조회한다.
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date")
+                // Where 절을 통해 미리 합산된 일별 amount와 order_date를 조회한다.
+                .selectClause("amount, order_date")
+                .fromClause("daily_order_stats")
+                .whereClause("order_date >= :startDate and order_date <= :endDate")
                 .parameterValues(parameters)
                 .sortKeys(sortKey)
                 .build();
@@ -159,32 +244,66 @@ public class UserConfiguration {
         return itemReader;
     }
 
+    private ItemReader<? extends OrderStatistics> streamOrderStatisticsItemReader(String date, int threads) {
+        YearMonth yearMonth = YearMonth.parse(date);
+        DayBucketOrderAggregator aggregator = new DayBucketOrderAggregator(dataSource, yearMonth, yearMonth);
+
+        // orders.id 구간 scan은 partition worker와 같이 구간마다 커넥션 하나를 잡으므로 partition Thread에서 실행한다.
+        return new DayBucketOrderStatisticsItemReader(aggregator, taskExecutors.partition(), threads, JOB_NAME + "_orderStatisticsItemReader");
+    }
+
     @Bean(JOB_NAME + "_saveUserStep")
     public Step saveUserStep() {
         return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
-                .tasklet(new SaveUserTasklet(userRepository))
+                .tasklet(new SaveUserTasklet(dataSource))
                 .build();
     }
 
     @Bean(JOB_NAME + "_userLevelUpStep")
-    public Step userLevelUpStep() throws Exception {
-        return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
-                .<User, User>chunk(CHUNK)
-                .reader(itemReader())
-                .processor(itemProcessor())
-                .writer(itemWriter())
-                .build();
+    @JobScope
+    public Step userLevelUpStep(@Value("#{jobParameters[mode]}") String mode,
+                                @Value("#{jobParameters[incremental]}") String incremental) throws Exception {
+        if (SQL_MODE.equals(mode)) {
+            return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+                    .tasklet(new UserLevelUpSqlTasklet(userRepository, dataSource, CHUNK))
+                    .build();
+        }
+
+        // 읽을 orders.id 구간을 정하고, 마지막 chunk와 함께 다음 실행을 위한 mark를 저장
+        OrderWatermarkListener orderWatermark = Boolean.parseBoolean(incremental)
+                ? new OrderWatermarkListener(JOB_NAME + "_orderWatermark", jobWatermarkRepository, dataSource)
+                : null;
+        SimpleStepBuilder<UserTotalAmount, UserTotalAmount> stepBuilder;
+
+        // mode=columnar 이면 ItemProcessor 없이 Writer에서 chunk 전체를 배열로 한 번에 판별한다.
+        if (COLUMNAR_MODE.equals(mode)) {
+            stepBuilder = this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+                    .<UserTotalAmount, UserTotalAmount>chunk(CHUNK)
+                    .reader(itemReader(orderWatermark))
+                    .writer(new ColumnarUserLevelUpItemWriter(dataSource));
+        } else {
+            // User 엔티티 대신 주문 금액 합계만 담은 UserTotalAmount로 처리
+            stepBuilder = this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+                    .<UserTotalAmount, UserTotalAmount>chunk(CHUNK)
+                    .reader(itemReader(orderWatermark))
+                    .processor(itemProcessor())
+                    .writer(itemWriter());
+        }
+
+        if (orderWatermark != null) {
+            stepBuilder.listener(orderWatermark);
+        }
+
+        return stepBuilder.build();
     }
 
-    private ItemWriter<? super User> itemWriter() {
-        return users -> users.forEach(x -> {
-            x.levelUp();
-            userRepository.save(x);
-        });
+    // 등급별로 묶어서 JDBC로 update
+    private ItemWriter<? super UserTotalAmount> itemWriter() {
+        return new UserLevelUpItemWriter<>(dataSource);
     }
 
 
-    private ItemProcessor<? super User, ? extends User> itemProcessor() {
+    private ItemProcessor<? super UserTotalAmount, ? extends UserTotalAmount> itemProcessor() {
         return user -> {
             // 등급 상향 대상인지 판별
             if (user.availableLevelUp()) {
@@ -194,15 +313,10 @@ public class UserConfiguration {
         };
     }
 
-    private ItemReader<? extends User> itemReader() throws Exception {
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .queryString("select u from User u")
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(CHUNK)
-                .name(JOB_NAME + "_userItemReader")
-                .build();
-
-        itemReader.afterPropertiesSet();
+    // orders를 읽지 않고 user별 주문 금액 합계를 group by로 읽는다.
+    private ItemReader<? extends UserTotalAmount> itemReader(OrderWatermarkListener orderWatermark) {
+        UserTotalAmountItemReader itemReader = new UserTotalAmountItemReader(dataSource, CHUNK, JOB_NAME + "_userItemReader");
+        itemReader.setOrderWatermark(orderWatermark);
 
         return itemReader;
     }
@@ -0,0 +1,69 @@
+package com.example.spring.batch.part4;
+
+/*
+
+    chunk 단위로 등급을 판별하는 evaluator
+    user 1건씩 availableLevelUp(), getNextLevel()을 호출하는 대신
+    id, 현재 등급(ordinal), 주문 금액 합계를 기본형 배열로 받아서 한 번의 loop로 상향될 등급을 계산한다.
+    등급 규칙은 User.Level에서 그대로 가져온다.
+
+ */
+public final class UserLevelEvaluator {
+
+    private static final byte NONE = -1;
+
+    // Level.ordinal() 순서의 다음 등급 기준 금액과 다음 등급 ordinal
+    private static final long[] NEXT_AMOUNTS;
+    private static final byte[] NEXT_LEVELS;
+    private static final byte NORMAL = (byte) User.Level.NORMAL.ordinal();
+
+    static {
+        User.Level[] levels = User.Level.values();
+        NEXT_AMOUNTS = new long[levels.length];
+        NEXT_LEVELS = new byte[levels.length];
+
+        for (User.Level level : levels) {
+            NEXT_AMOUNTS[level.ordinal()] = level.getNextAmount();
+            NEXT_LEVELS[level.ordinal()] = level.getNextLevel() == null
+                    ? NONE
+                    : (byte) level.getNextLevel().ordinal();
+        }
+    }
+
+    private UserLevelEvaluator() {
+    }
+
+    /**
+     * 등급이 바뀌는 user만 changedIds, changedLevels 앞쪽에 채우고 그 갯수를 반환한다.
+     */
+    public static int evaluate(long[] ids, byte[] levels, long[] totalAmounts, int size,
+                               long[] changedIds, byte[] changedLevels) {
+        int changed = 0;
+
+        for (int i = 0; i < size; i++) {
+            byte level = levels[i];
+            long totalAmount = totalAmounts[i];
+
+            // Level.availableLevelUp()과 같은 조건
+            if (NEXT_LEVELS[level] == NONE || totalAmount < NEXT_AMOUNTS[level]) {
+                continue;
+            }
+
+            changedIds[changed] = ids[i];
+            changedLevels[changed] = nextLevel(totalAmount);
+            changed++;
+        }
+
+        return changed;
+    }
+
+    // Level.getNextLevel()과 같이 선언 순서(VIP -> NORMAL)대로 기준 금액과 비교
+    private static byte nextLevel(long totalAmount) {
+        for (int level = 0; level < NEXT_AMOUNTS.length; level++) {
+            if (totalAmount >= NEXT_AMOUNTS[level]) {
+                return NEXT_LEVELS[level] == NONE ? (byte) level : NEXT_LEVELS[level];
+            }
+        }
+        return NORMAL;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.spring.batch.part4;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+    user 1건마다 userRepository.save()로 merge + update 하던 방식 대신
+    chunk 안의 user를 상향될 등급별로 묶어서 등급마다 update 문을 한 번씩만 실행하는 ItemWriter
+    1,000건 chunk 기준 등급 수(최대 4개) 만큼의 update만 발생한다.
+    User 엔티티, UserTotalAmount 프로젝션 모두 LevelUpTarget으로 처리한다.
+
+ */
+public class UserLevelUpItemWriter<T extends LevelUpTarget> implements ItemWriter<T> {
+
+    private static final String UPDATE_SQL =
+            "update user set level = :level, updated_date = :updatedDate where id in (:ids)";
+
+    // in 절에 들어가는 id 갯수 제한
+    private static final int IN_CLAUSE_SIZE = 1000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public UserLevelUpItemWriter(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void write(List<? extends T> users) throws Exception {
+        // 상향될 등급을 기준으로 user id를 묶는다.
+        Map<User.Level, List<Long>> idsByLevel = new EnumMap<>(User.Level.class);
+        LevelTransitionCounter transitions = new LevelTransitionCounter();
+        for (T user : users) {
+            User.Level nextLevel = user.nextLevel();
+            idsByLevel.computeIfAbsent(nextLevel, level -> new ArrayList<>())
+                    .add(user.getId());
+            transitions.add(user.getLevel(), nextLevel);
+        }
+
+        update(idsByLevel);
+        transitions.record();
+    }
+
+    // UserLevelEvaluator처럼 이미 등급 판별이 끝난 id, 변경 전 등급, 변경 후 등급(ordinal) 배열을 그대로 update
+    public void write(long[] ids, byte[] fromLevels, byte[] levels, int size) {
+        User.Level[] values = User.Level.values();
+
+        Map<User.Level, List<Long>> idsByLevel = new EnumMap<>(User.Level.class);
+        LevelTransitionCounter transitions = new LevelTransitionCounter();
+        for (int i = 0; i < size; i++) {
+            idsByLevel.computeIfAbsent(values[levels[i]], level -> new ArrayList<>())
+                    .add(ids[i]);
+            transitions.add(values[fromLevels[i]], values[levels[i]]);
+        }
+
+        update(idsByLevel);
+        transitions.record();
+    }
+
+    private void update(Map<User.Level, List<Long>> idsByLevel) {
+        LocalDate updatedDate = LocalDate.now();
+        idsByLevel.forEach((level, ids) -> update(level, ids, updatedDate));
+    }
+
+    private void update(User.Level level, List<Long> ids, LocalDate updatedDate) {
+        for (int from = 0; from < ids.size(); from += IN_CLAUSE_SIZE) {
+            List<Long> slice = ids.subList(from, Math.min(from + IN_CLAUSE_SIZE, ids.size()));
+
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                    .addValue("level", level.name())
+                    .addValue("updatedDate", updatedDate)
+                    .addValue("ids", slice);
+
+            jdbcTemplate.update(UPDATE_SQL, parameters);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.spring.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+
+/*
+
+    User.Level의 등급 규칙을 SQL로 옮겨서 DB 안에서 등급을 상향하는 Tasklet
+    user, orders 엔티티를 JVM으로 가져오지 않고 id 구간마다 update 한 번으로 처리한다.
+    Tasklet을 CONTINUABLE로 반복시키면 구간마다 트랜잭션이 나뉘고,
+    처리한 마지막 id를 ExecutionContext에 저장해서 재시작 시 이어서 처리한다.
+    처리할 id 범위(min, max)는 첫 실행에서 한 번만 조회해서 ExecutionContext에 같이 저장한다.
+
+ */
+@Slf4j
+public class UserLevelUpSqlTasklet implements Tasklet {
+
+    private static final String LAST_ID_KEY = "lastId";
+    private static final String MAX_ID_KEY = "maxId";
+    // orders를 user마다 상관 서브쿼리로 합산하지 않고 user에 저장된 주문 금액 합계 컬럼을 사용
+    // case, where 절에서 여러 번 참조해도 컬럼을 읽을 뿐이라 user 1명당 집계는 없다.
+    private static final String TOTAL_AMOUNT = "u.total_amount";
+    private static final String COUNT_SQL = "select count(*) from user u where u.id between :minId and :maxId";
+
+    private final UserRepository userRepository;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    // 한 번의 update로 처리할 id 구간의 크기
+    private final long rangeSize;
+    private final String updateSql;
+
+    public UserLevelUpSqlTasklet(UserRepository userRepository, DataSource dataSource, long rangeSize) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.rangeSize = rangeSize;
+        this.updateSql = "update user u set level = " + nextLevelCase()
+                + ", updated_date = :updatedDate"
+                + " where u.id between :minId and :maxId and (" + levelUpCondition() + ")";
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext executionContext = chunkContext.getStepContext().getStepExecution().getExecutionContext();
+        if (!executionContext.containsKey(MAX_ID_KEY)) {
+            if (userRepository.count() == 0) {
+                return RepeatStatus.FINISHED;
+            }
+            executionContext.putLong(MAX_ID_KEY, userRepository.findMaxId());
+            executionContext.putLong(LAST_ID_KEY, userRepository.findMinId() - 1);
+        }
+
+        long maxId = executionContext.getLong(MAX_ID_KEY);
+        long minId = executionContext.getLong(LAST_ID_KEY) + 1;
+
+        if (minId > maxId) {
+            return RepeatStatus.FINISHED;
+        }
+
+        long end = Math.min(minId + rangeSize - 1, maxId);
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("updatedDate", LocalDate.now())
+                .addValue("minId", minId)
+                .addValue("maxId", end);
+
+        int examined = jdbcTemplate.queryForObject(COUNT_SQL, parameters, Integer.class);
+        int updated = jdbcTemplate.update(updateSql, parameters);
+        log.debug("user id {} ~ {} 등급 상향 : {}/{}건", minId, end, updated, examined);
+
+        StepContributions.incrementReadCount(contribution, examined);
+        // jvm 모드에서 processor가 걸러내는 user와 같이 대상이 아닌 user는 filter
+        contribution.incrementFilterCount(examined - updated);
+        contribution.incrementWriteCount(updated);
+        executionContext.putLong(LAST_ID_KEY, end);
+
+        return end >= maxId ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+
+    // Level.getNextLevel()과 같은 순서(VIP -> NORMAL)로 금액을 비교한다.
+    private static String nextLevelCase() {
+        StringBuilder sql = new StringBuilder("case");
+        for (User.Level level : User.Level.values()) {
+            User.Level target = level.getNextLevel() == null ? level : level.getNextLevel();
+            sql.append(" when ").append(TOTAL_AMOUNT).append(" >= ").append(level.getNextAmount())
+                    .append(" then '").append(target.name()).append("'");
+        }
+        return sql.append(" else '").append(User.Level.NORMAL.name()).append("' end").toString();
+    }
+
+    // Level.availableLevelUp()과 같은 조건, nextLevel이 없는 VIP는 대상에서 제외
+    private static String levelUpCondition() {
+        StringBuilder sql = new StringBuilder();
+        for (User.Level level : User.Level.values()) {
+            if (level.getNextLevel() == null) {
+                continue;
+            }
+            if (sql.length() > 0) {
+                sql.append(" or ");
+            }
+            sql.append("(u.level = '").append(level.name()).append("' and ")
+                    .append(TOTAL_AMOUNT).append(" >= ").append(level.getNextAmount()).append(")");
+        }
+        return sql.toString();
+    }
+}
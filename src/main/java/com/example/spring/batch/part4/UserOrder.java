@@ -0,0 +1,22 @@
+package com.example.spring.batch.part4;
+
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+// 이미 저장된 user에 추가할 주문, OrderIngestItemWriter의 입력
+@Getter
+public class UserOrder {
+
+    private final long userId;
+    private final String itemName;
+    private final long amount;
+    private final LocalDate createdDate;
+
+    public UserOrder(long userId, String itemName, long amount, LocalDate createdDate) {
+        this.userId = userId;
+        this.itemName = itemName;
+        this.amount = amount;
+        this.createdDate = createdDate;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.spring.batch.part4;
+
+import com.example.spring.batch.part5.DailyOrderStatsWriter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+
+    User, Orders는 IDENTITY 전략이라 Hibernate가 insert를 batch로 묶지 못하고 1건씩 실행한다.
+    이 클래스는 id를 미리 블록으로 할당해서 user, orders insert를 JDBC batch로 실행한다.
+    MySQL은 jdbc-url에 rewriteBatchedStatements=true가 있으면 multi-row insert로 바뀐다.
+
+    id 블록은 현재 max(id) 다음부터 할당하므로 적재하는 동안 다른 곳에서 insert 하지 않아야 한다.
+    적재가 끝나면 restartIdentity()로 auto increment 값을 할당한 id 다음으로 맞춘다.
+
+    user.total_amount는 같은 slice에서 추가한 user면 insert 값에 더하고,
+    이미 저장된 user의 주문이면 orders insert와 같은 트랜잭션에서 update로 더한다.
+    daily_order_stats rollup도 slice마다 날짜별로 합산해서 같은 트랜잭션에서 더한다.
+
+ */
+public class UserOrderBulkWriter {
+
+    private static final String INSERT_USER_SQL = "insert into user (id, username, level, total_amount) values (?, ?, ?, ?)";
+    private static final String INSERT_ORDER_SQL =
+            "insert into orders (id, item_name, amount, created_date, user_id) values (?, ?, ?, ?, ?)";
+    private static final String ADD_TOTAL_AMOUNT_SQL = "update user set total_amount = total_amount + ? where id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DailyOrderStatsWriter dailyOrderStatsWriter;
+
+    private final List<Object[]> users = new ArrayList<>();
+    private final List<Object[]> orders = new ArrayList<>();
+    // 이번 slice에 없는 user에 더할 주문 금액, user id 순서로 update 하도록 TreeMap
+    private final Map<Long, Long> totalAmounts = new TreeMap<>();
+    // addUser로 마지막에 추가한 user, 바로 뒤에 오는 그 user의 주문 금액을 insert 값에 더한다.
+    private Object[] lastUser;
+    // daily_order_stats에 더할 날짜별 [금액, 건수]
+    private final Map<LocalDate, long[]> dailyAmounts = new HashMap<>();
+
+    public UserOrderBulkWriter(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.dailyOrderStatsWriter = new DailyOrderStatsWriter(dataSource);
+    }
+
+    public long nextUserId() {
+        return jdbcTemplate.queryForObject("select coalesce(max(id), 0) + 1 from user", Long.class);
+    }
+
+    public long nextOrderId() {
+        return jdbcTemplate.queryForObject("select coalesce(max(id), 0) + 1 from orders", Long.class);
+    }
+
+    public void addUser(long id, String username) {
+        lastUser = new Object[]{id, username, User.Level.NORMAL.name(), 0L};
+        users.add(lastUser);
+    }
+
+    public void addOrder(long id, String itemName, long amount, LocalDate createdDate, long userId) {
+        orders.add(new Object[]{id, itemName, amount, Date.valueOf(createdDate), userId});
+        DailyOrderStatsWriter.accumulate(dailyAmounts, createdDate, amount);
+
+        if (lastUser != null && (long) lastUser[0] == userId) {
+            lastUser[3] = (long) lastUser[3] + amount;
+        } else {
+            totalAmounts.merge(userId, amount, Long::sum);
+        }
+    }
+
+    // 모아둔 user, orders를 batch insert, 반환값은 insert 한 row 수
+    // insert가 실패해서 트랜잭션이 롤백되어도 모아둔 값은 비워서, 재시도나 재시작 때 이전 slice를 다시 insert 하지 않는다.
+    public int flush() {
+        try {
+            int rows = users.size() + orders.size();
+            if (!users.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_USER_SQL, users);
+            }
+            // 이미 저장된 user의 row lock을 orders insert 전에 잡는다. (OrderIngestItemWriter와 같은 user -> orders 순서)
+            if (!totalAmounts.isEmpty()) {
+                List<Object[]> updates = new ArrayList<>(totalAmounts.size());
+                totalAmounts.forEach((userId, amount) -> updates.add(new Object[]{amount, userId}));
+                jdbcTemplate.batchUpdate(ADD_TOTAL_AMOUNT_SQL, updates);
+            }
+            // orders.user_id가 user를 참조하므로 user 다음에 insert
+            if (!orders.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_ORDER_SQL, orders);
+            }
+            dailyOrderStatsWriter.add(dailyAmounts);
+            return rows;
+        } finally {
+            users.clear();
+            orders.clear();
+            totalAmounts.clear();
+            dailyAmounts.clear();
+            lastUser = null;
+        }
+    }
+
+    // 이후 JPA 등으로 insert 할 때 미리 할당한 id와 겹치지 않도록
+    public void restartIdentity(long nextUserId, long nextOrderId) throws MetaDataAccessException {
+        String productName = JdbcUtils.extractDatabaseMetaData(
+                jdbcTemplate.getDataSource(), DatabaseMetaData::getDatabaseProductName);
+
+        if ("MySQL".equalsIgnoreCase(productName)) {
+            jdbcTemplate.execute("alter table user auto_increment = " + nextUserId);
+            jdbcTemplate.execute("alter table orders auto_increment = " + nextOrderId);
+            return;
+        }
+        jdbcTemplate.execute("alter table user alter column id restart with " + nextUserId);
+        jdbcTemplate.execute("alter table orders alter column id restart with " + nextOrderId);
+    }
+}
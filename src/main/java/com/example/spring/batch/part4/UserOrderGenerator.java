@@ -0,0 +1,114 @@
+package com.example.spring.batch.part4;
+
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/*
+
+    테스트용 user, orders 값을 만드는 generator
+    user마다 seed와 user 번호로 난수 생성기를 새로 만들기 때문에
+    같은 seed면 몇 번째 slice에서, 몇 번을 재시작해서 만들든 같은 user는 항상 같은 주문을 가진다.
+
+    - user별 주문 수 : zipf(소수의 user가 주문 대부분을 가짐) 또는 lognormal, 1 ~ maxOrders
+    - 주문 금액 : lognormal, 중앙값 약 30,000
+    - 주문일 : startDate부터 days일 사이 균등 분포
+
+    user 1명의 값은 orderCount -> (amount, createdDate, itemNo) x 주문 수 순서로 꺼내야 한다.
+
+ */
+public class UserOrderGenerator {
+
+    public static final String ZIPF = "zipf";
+    public static final String LOGNORMAL = "lognormal";
+
+    private static final double ZIPF_EXPONENT = 1.1;
+    private static final double ORDER_COUNT_MU = 1.0;
+    private static final double ORDER_COUNT_SIGMA = 1.0;
+    private static final double AMOUNT_MU = Math.log(30_000);
+    private static final double AMOUNT_SIGMA = 1.2;
+    private static final int ITEM_SIZE = 1_000;
+
+    private final long seed;
+    private final boolean zipf;
+    private final int maxOrders;
+    private final LocalDate startDate;
+    private final int days;
+
+    // zipf 누적 확률, index k는 주문 수 k + 1
+    private final double[] zipfCdf;
+
+    public UserOrderGenerator(long seed, String distribution, int maxOrders, LocalDate startDate, int days) {
+        if (!ZIPF.equals(distribution) && !LOGNORMAL.equals(distribution)) {
+            throw new IllegalArgumentException("distribution은 zipf, lognormal 중 하나여야 합니다 : " + distribution);
+        }
+        if (maxOrders < 1 || days < 1) {
+            throw new IllegalArgumentException("maxOrders, days는 1 이상이어야 합니다.");
+        }
+        this.seed = seed;
+        this.zipf = ZIPF.equals(distribution);
+        this.maxOrders = maxOrders;
+        this.startDate = startDate;
+        this.days = days;
+        this.zipfCdf = zipf ? zipfCdf(maxOrders) : null;
+    }
+
+    public SplittableRandom random(long userIndex) {
+        return new SplittableRandom(seed ^ (userIndex * 0x9E3779B97F4A7C15L));
+    }
+
+    public int orderCount(SplittableRandom random) {
+        if (zipf) {
+            return binarySearch(zipfCdf, random.nextDouble()) + 1;
+        }
+        long count = Math.round(Math.exp(ORDER_COUNT_MU + ORDER_COUNT_SIGMA * gaussian(random)));
+        return (int) Math.max(1, Math.min(maxOrders, count));
+    }
+
+    public long amount(SplittableRandom random) {
+        double amount = Math.exp(AMOUNT_MU + AMOUNT_SIGMA * gaussian(random));
+        return Math.max(100, Math.round(amount));
+    }
+
+    public LocalDate createdDate(SplittableRandom random) {
+        return startDate.plusDays(random.nextInt(days));
+    }
+
+    public int itemNo(SplittableRandom random) {
+        return random.nextInt(ITEM_SIZE);
+    }
+
+    // SplittableRandom에는 nextGaussian이 없으므로 Box-Muller
+    private static double gaussian(SplittableRandom random) {
+        double u1 = 1.0 - random.nextDouble();
+        double u2 = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+    }
+
+    private static double[] zipfCdf(int maxOrders) {
+        double[] cdf = new double[maxOrders];
+        double sum = 0;
+        for (int k = 1; k <= maxOrders; k++) {
+            sum += 1 / Math.pow(k, ZIPF_EXPONENT);
+            cdf[k - 1] = sum;
+        }
+        for (int i = 0; i < maxOrders; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    // value 이상인 첫 번째 index
+    private static int binarySearch(double[] cdf, double value) {
+        int low = 0;
+        int high = cdf.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cdf[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -10,6 +10,9 @@ import java.util.Map;
 public interface UserRepository extends JpaRepository<User, Long> {
     Collection<User> findALlByUpdatedDate(LocalDate updatedDate);
 
+    // 엔티티를 읽지 않고 건수만 조회
+    long countByUpdatedDate(LocalDate updatedDate);
+
     // PartitionStep을 위한 메서드 정의
     @Query(value = "select min(u.id) from User u")
     long findMinId();
@@ -0,0 +1,37 @@
+package com.example.spring.batch.part4;
+
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/*
+
+    등급 판별에 필요한 값만 담은 User 프로젝션
+    orders 목록 대신 DB에서 합산한 주문 금액만 가지고 있다.
+    remote chunking에서 worker로 보낼 수 있도록 Serializable
+
+ */
+@Getter
+public class UserTotalAmount implements LevelUpTarget, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+    private final User.Level level;
+    private final long totalAmount;
+
+    public UserTotalAmount(Long id, User.Level level, long totalAmount) {
+        this.id = id;
+        this.level = level;
+        this.totalAmount = totalAmount;
+    }
+
+    public boolean availableLevelUp() {
+        return User.Level.availableLevelUp(this.level, this.totalAmount);
+    }
+
+    @Override
+    public User.Level nextLevel() {
+        return User.Level.getNextLevel(this.totalAmount);
+    }
+}
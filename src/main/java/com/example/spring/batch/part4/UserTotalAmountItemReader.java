@@ -0,0 +1,100 @@
+package com.example.spring.batch.part4;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/*
+
+    User 엔티티 대신 페이지마다 (user id, 등급, 주문 금액 합계)만 읽는 ItemReader
+    주문 금액 합계는 orders를 group by 하지 않고 user.total_amount 컬럼을 읽는다.
+
+ */
+public class UserTotalAmountItemReader extends KeysetPagingItemReader<UserTotalAmount> {
+
+    private static final String PAGE_SQL = "select u.id, u.level, u.total_amount"
+            + " from user u"
+            + " where u.id > :lastId and u.id <= :maxId"
+            + " order by u.id"
+            + " limit :pageSize";
+
+    // 증분 모드, orders.id가 from ~ to 구간인 주문을 가진 user만 읽는다.
+    private static final String INCREMENTAL_PAGE_SQL = "select u.id, u.level, u.total_amount"
+            + " from user u"
+            + " where u.id > :lastId and u.id <= :maxId"
+            + " and u.id in (select n.user_id from orders n where n.id > :orderIdFrom and n.id <= :orderIdTo)"
+            + " order by u.id"
+            + " limit :pageSize";
+
+    private static final RowMapper<UserTotalAmount> ROW_MAPPER = (rs, rowNum) -> new UserTotalAmount(
+            rs.getLong(1),
+            User.Level.valueOf(rs.getString(2)),
+            rs.getLong(3));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final long maxId;
+
+    private OrderWatermarkListener orderWatermark;
+    private long orderIdFrom;
+    private long orderIdTo;
+
+    public UserTotalAmountItemReader(DataSource dataSource, int pageSize, String name) {
+        this(dataSource, pageSize, name, 0L, Long.MAX_VALUE);
+    }
+
+    // 파티션처럼 minId ~ maxId 구간만 읽을 때
+    public UserTotalAmountItemReader(DataSource dataSource, int pageSize, String name, long minId, long maxId) {
+        super(pageSize, minId - 1, name);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.maxId = maxId;
+    }
+
+    // OrderWatermarkListener가 StepExecutionContext에 저장한 orders.id 구간에 주문이 있는 user만 읽도록
+    // 마지막 chunk를 커밋할 때 같은 트랜잭션에서 다음 실행의 mark를 저장한다.
+    public void setOrderWatermark(OrderWatermarkListener orderWatermark) {
+        this.orderWatermark = orderWatermark;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        if (orderWatermark != null) {
+            this.orderIdFrom = executionContext.getLong(OrderWatermarkListener.FROM_KEY);
+            this.orderIdTo = executionContext.getLong(OrderWatermarkListener.TO_KEY);
+        }
+        super.open(executionContext);
+    }
+
+    // chunk 트랜잭션 안에서 호출된다.
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        if (orderWatermark != null && isExhausted()) {
+            orderWatermark.save(executionContext);
+        }
+    }
+
+    @Override
+    protected List<UserTotalAmount> doReadPage(long lastId, int pageSize) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("lastId", lastId)
+                .addValue("maxId", this.maxId)
+                .addValue("pageSize", pageSize);
+
+        if (orderWatermark != null) {
+            parameters.addValue("orderIdFrom", this.orderIdFrom)
+                    .addValue("orderIdTo", this.orderIdTo);
+            return jdbcTemplate.query(INCREMENTAL_PAGE_SQL, parameters, ROW_MAPPER);
+        }
+
+        return jdbcTemplate.query(PAGE_SQL, parameters, ROW_MAPPER);
+    }
+
+    @Override
+    protected long getId(UserTotalAmount item) {
+        return item.getId();
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.spring.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/*
+
+    user.total_amount를 orders 합계로 다시 계산해서 어긋난 user를 찾아 고치는 Tasklet
+    minId ~ maxId 구간을 rangeSize 씩 나눠서 구간마다 커밋하고, 처리한 마지막 id를 ExecutionContext에 저장한다.
+
+    - 구간마다 orders를 group by 해서 total_amount와 다른 user만 읽는다.
+    - 고칠 때는 읽은 합계를 쓰지 않고 update 안에서 다시 합산한다.
+      읽은 뒤에 OrderIngestItemWriter가 주문을 추가해도 그 금액을 잃지 않도록
+    - update는 user row lock을 잡은 뒤 orders를 읽는다.
+      OrderIngestItemWriter도 user를 먼저 update 하고 orders에 insert 하므로 InnoDB에서 lock 순서가 엇갈리지 않는다.
+      orders를 쓰는 다른 Writer도 user -> orders 순서를 지켜야 같이 실행할 수 있다.
+    - 어긋난 user 수와 금액 차이는 StepExecutionContext에 남기고 write count로 보고한다.
+
+ */
+@Slf4j
+public class UserTotalReconcileTasklet implements Tasklet {
+
+    public static final String DRIFT_USERS_KEY = "reconcile.driftUsers";
+    public static final String DRIFT_AMOUNT_KEY = "reconcile.driftAmount";
+
+    private static final String LAST_ID_KEY = "lastId";
+    // 로그로 남길 어긋난 user 수, 구간마다
+    private static final int LOG_LIMIT = 10;
+
+    private static final String DRIFT_SQL = "select u.id, u.total_amount, coalesce(sum(o.amount), 0)"
+            + " from user u left join orders o on o.user_id = u.id"
+            + " where u.id between :minId and :maxId"
+            + " group by u.id, u.total_amount"
+            + " having u.total_amount <> coalesce(sum(o.amount), 0)";
+
+    private static final String FIX_SQL = "update user u"
+            + " set total_amount = (select coalesce(sum(o.amount), 0) from orders o where o.user_id = u.id)"
+            + " where u.id = ?";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final long minId;
+    private final long maxId;
+    private final long rangeSize;
+
+    public UserTotalReconcileTasklet(DataSource dataSource, long minId, long maxId, long rangeSize) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.minId = minId;
+        this.maxId = maxId;
+        this.rangeSize = rangeSize;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        StepExecution stepExecution = chunkContext.getStepContext().getStepExecution();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        long start = executionContext.containsKey(LAST_ID_KEY)
+                ? executionContext.getLong(LAST_ID_KEY) + 1
+                : minId;
+        if (start > maxId) {
+            return RepeatStatus.FINISHED;
+        }
+        long end = Math.min(start + rangeSize - 1, maxId);
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("minId", start)
+                .addValue("maxId", end);
+
+        List<long[]> drifts = jdbcTemplate.query(DRIFT_SQL, parameters,
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)});
+
+        long driftAmount = 0;
+        for (int i = 0; i < drifts.size(); i++) {
+            long[] drift = drifts.get(i);
+            driftAmount += Math.abs(drift[2] - drift[1]);
+            if (i < LOG_LIMIT) {
+                log.warn("user {} total_amount 불일치 : 저장 {}, 주문 합계 {}", drift[0], drift[1], drift[2]);
+            }
+        }
+
+        if (!drifts.isEmpty()) {
+            jdbcTemplate.getJdbcTemplate().batchUpdate(FIX_SQL, drifts, drifts.size(),
+                    (ps, drift) -> ps.setLong(1, drift[0]));
+        }
+
+        contribution.incrementReadCount();
+        contribution.incrementWriteCount(drifts.size());
+        executionContext.putLong(DRIFT_USERS_KEY, executionContext.getLong(DRIFT_USERS_KEY, 0L) + drifts.size());
+        executionContext.putLong(DRIFT_AMOUNT_KEY, executionContext.getLong(DRIFT_AMOUNT_KEY, 0L) + driftAmount);
+        executionContext.putLong(LAST_ID_KEY, end);
+
+        return end >= maxId ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.spring.batch.part5;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDate;
+
+// 일별 주문 금액 합계, 건수 rollup 테이블, DailyOrderStatsWriter가 JDBC로 갱신한다.
+@Getter
+@Entity
+@Table(name = "daily_order_stats")
+@NoArgsConstructor
+public class DailyOrderStats {
+
+    @Id
+    private LocalDate orderDate;
+
+    private long amount;
+
+    private long orderCount;
+}
@@ -0,0 +1,66 @@
+package com.example.spring.batch.part5;
+
+import com.example.spring.batch.part4.JobWatermark;
+import com.example.spring.batch.part4.JobWatermarkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.util.List;
+
+/*
+
+    daily_order_stats를 orders와 맞추는 catch-up Tasklet
+    지난 실행 이후 추가된 orders가 있는 날짜만 orders에서 다시 합산한다.
+    처음 실행하면 watermark가 0이므로 모든 날짜를 합산한다.
+
+    watermark는 읽은 시점의 max(orders.id)라서 id를 먼저 할당받고 늦게 커밋된 주문은 watermark 아래에 생긴다.
+    그래서 JobWatermark.rescanFrom()으로 watermark 아래 LATE_COMMIT_WINDOW 만큼 겹쳐서 다시 읽는다.
+    recompute는 덮어쓰기라서 이미 반영한 날짜를 다시 계산해도 결과가 같다.
+
+    주문 ingest 경로에서 이미 더한 날짜도 덮어쓰기 때문에 두 번 더해지지 않고,
+    ingest 경로를 거치지 않고 들어온 주문도 여기서 반영된다.
+    recompute와 watermark 저장은 같은 트랜잭션에서 커밋된다.
+
+ */
+@Slf4j
+public class DailyOrderStatsCatchUpTasklet implements Tasklet {
+
+    private static final String WATERMARK_NAME = "dailyOrderStats";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DailyOrderStatsWriter dailyOrderStatsWriter;
+    private final JobWatermarkRepository jobWatermarkRepository;
+
+    public DailyOrderStatsCatchUpTasklet(DataSource dataSource, JobWatermarkRepository jobWatermarkRepository) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.dailyOrderStatsWriter = new DailyOrderStatsWriter(dataSource);
+        this.jobWatermarkRepository = jobWatermarkRepository;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        long from = jobWatermarkRepository.findById(WATERMARK_NAME)
+                .map(JobWatermark::rescanFrom)
+                .orElse(0L);
+        long to = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from orders", Long.class);
+
+        if (to <= from) {
+            return RepeatStatus.FINISHED;
+        }
+
+        List<LocalDate> dates = jdbcTemplate.queryForList(
+                "select distinct created_date from orders where id > ? and id <= ?", LocalDate.class, from, to);
+        dailyOrderStatsWriter.recompute(dates);
+        jobWatermarkRepository.save(new JobWatermark(WATERMARK_NAME, to));
+
+        log.info("orders.id {} ~ {} 반영, daily_order_stats {}일 재계산", from, to, dates.size());
+        contribution.incrementWriteCount(dates.size());
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.spring.batch.part5;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/*
+
+    daily_order_stats rollup 갱신
+
+    - add : 주문을 insert 하는 트랜잭션에서 일별 금액, 건수를 더한다. (OrderIngestItemWriter, UserOrderBulkWriter)
+            update 후 없는 날짜만 insert, 다른 Thread가 먼저 insert 했으면 다시 update
+    - recompute : 지정한 날짜를 orders에서 다시 합산해서 덮어쓴다. (DailyOrderStatsCatchUpTasklet)
+                  여러 번 실행해도 결과가 같으므로 add로 반영된 주문을 다시 계산해도 두 번 더해지지 않는다.
+
+ */
+public class DailyOrderStatsWriter {
+
+    private static final String ADD_SQL =
+            "update daily_order_stats set amount = amount + ?, order_count = order_count + ? where order_date = ?";
+    private static final String INSERT_SQL =
+            "insert into daily_order_stats (order_date, amount, order_count) values (?, ?, ?)";
+    private static final String DELETE_SQL = "delete from daily_order_stats where order_date in (:dates)";
+    private static final String RECOMPUTE_SQL = "insert into daily_order_stats (order_date, amount, order_count)"
+            + " select created_date, sum(amount), count(*) from orders"
+            + " where created_date in (:dates)"
+            + " group by created_date";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public DailyOrderStatsWriter(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+    }
+
+    // 날짜별 [금액, 건수], 날짜 순서로 update 해서 동시에 실행되는 트랜잭션끼리 lock 순서가 같도록
+    public void add(Map<LocalDate, long[]> amounts) {
+        if (amounts.isEmpty()) {
+            return;
+        }
+        JdbcTemplate template = jdbcTemplate.getJdbcTemplate();
+        Map<LocalDate, long[]> sorted = new TreeMap<>(amounts);
+
+        List<Object[]> updates = new ArrayList<>(sorted.size());
+        sorted.forEach((date, value) -> updates.add(new Object[]{value[0], value[1], Date.valueOf(date)}));
+        int[] updated = template.batchUpdate(ADD_SQL, updates);
+
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] != 0) {
+                continue;
+            }
+            Object[] update = updates.get(i);
+            try {
+                template.update(INSERT_SQL, update[2], update[0], update[1]);
+            } catch (DuplicateKeyException e) {
+                template.update(ADD_SQL, update);
+            }
+        }
+    }
+
+    public void recompute(Collection<LocalDate> dates) {
+        if (dates.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource parameters = new MapSqlParameterSource("dates",
+                dates.stream().map(Date::valueOf).collect(Collectors.toList()));
+        jdbcTemplate.update(DELETE_SQL, parameters);
+        jdbcTemplate.update(RECOMPUTE_SQL, parameters);
+    }
+
+    // 주문 1건을 날짜별 [금액, 건수]에 더한다.
+    public static void accumulate(Map<LocalDate, long[]> amounts, LocalDate date, long amount) {
+        long[] value = amounts.computeIfAbsent(date, x -> new long[2]);
+        value[0] += amount;
+        value[1]++;
+    }
+}
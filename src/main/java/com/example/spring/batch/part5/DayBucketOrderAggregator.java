@@ -0,0 +1,138 @@
+package com.example.spring.batch.part5;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/*
+
+    orders를 forward-only 커서로 한 번만 읽어서 일별 주문 금액을 합산하는 aggregator
+    DB에서 group by, order by 하지 않고 (년, 월, 일, 금액)을 기본형으로 읽어
+    long[] 버킷(월 x 31일)에 더하므로 row마다 객체를 만들지 않는다.
+
+    - aggregate : 커서 1개로 전체 구간을 읽는다.
+    - aggregate(executor, threads) : from ~ to 기간 주문의 orders.id 구간을 threads 개로 나눠 Thread마다 자기 배열에 더한 뒤 마지막에 합친다.
+      기간 밖의 주문까지 id 구간에 넣으면 일부 Thread만 일하게 되므로 min, max id도 기간 조건으로 구한다.
+
+    MySQL에서 결과를 스트리밍하려면 jdbc-url에 useCursorFetch=true가 필요하다. (application-mysql.yml)
+
+ */
+public class DayBucketOrderAggregator {
+
+    private static final int DAYS = 31;
+    private static final int FETCH_SIZE = 10_000;
+
+    // from ~ to 기간의 주문
+    private static final String PERIOD = " from orders where created_date >= ? and created_date <= ?";
+    private static final String SCAN_SQL = "select extract(year from created_date), extract(month from created_date),"
+            + " extract(day from created_date), amount"
+            + PERIOD;
+    private static final String RANGE_SCAN_SQL = SCAN_SQL + " and id >= ? and id <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final YearMonth from;
+    private final YearMonth to;
+    private final int baseMonth;
+    private final int buckets;
+
+    public DayBucketOrderAggregator(DataSource dataSource, YearMonth from, YearMonth to) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.from = from;
+        this.to = to;
+        this.baseMonth = monthIndex(from.getYear(), from.getMonthValue());
+        this.buckets = (monthIndex(to.getYear(), to.getMonthValue()) - baseMonth + 1) * DAYS;
+    }
+
+    public List<OrderStatistics> aggregate() {
+        Buckets result = new Buckets(buckets);
+        jdbcTemplate.query(SCAN_SQL, rs -> {
+            result.add(bucket(rs.getInt(1), rs.getInt(2), rs.getInt(3)), rs.getLong(4));
+        }, from.atDay(1), to.atEndOfMonth());
+        return toStatistics(result);
+    }
+
+    public List<OrderStatistics> aggregate(Executor executor, int threads) {
+        Long minId = jdbcTemplate.queryForObject("select min(id)" + PERIOD, Long.class, from.atDay(1), to.atEndOfMonth());
+        Long maxId = jdbcTemplate.queryForObject("select max(id)" + PERIOD, Long.class, from.atDay(1), to.atEndOfMonth());
+        if (minId == null || threads <= 1) {
+            return aggregate();
+        }
+
+        long rangeSize = (maxId - minId) / threads + 1;
+        List<CompletableFuture<Buckets>> futures = new ArrayList<>(threads);
+        for (long start = minId; start <= maxId; start += rangeSize) {
+            long end = Math.min(start + rangeSize - 1, maxId);
+            long rangeStart = start;
+            futures.add(CompletableFuture.supplyAsync(() -> scan(rangeStart, end), executor));
+        }
+
+        Buckets result = new Buckets(buckets);
+        for (CompletableFuture<Buckets> future : futures) {
+            result.merge(future.join());
+        }
+        return toStatistics(result);
+    }
+
+    private Buckets scan(long minId, long maxId) {
+        Buckets result = new Buckets(buckets);
+        jdbcTemplate.query(RANGE_SCAN_SQL, rs -> {
+            result.add(bucket(rs.getInt(1), rs.getInt(2), rs.getInt(3)), rs.getLong(4));
+        }, from.atDay(1), to.atEndOfMonth(), minId, maxId);
+        return result;
+    }
+
+    // 주문이 있는 날짜만 날짜 순서로, group by 결과와 같다.
+    private List<OrderStatistics> toStatistics(Buckets result) {
+        List<OrderStatistics> statistics = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            int offset = (monthIndex(month.getYear(), month.getMonthValue()) - baseMonth) * DAYS;
+            for (int day = 1; day <= month.lengthOfMonth(); day++) {
+                if (result.counts[offset + day - 1] == 0) {
+                    continue;
+                }
+                statistics.add(OrderStatistics.builder()
+                        .amount(result.amounts[offset + day - 1])
+                        .date(LocalDate.of(month.getYear(), month.getMonthValue(), day))
+                        .build());
+            }
+        }
+        return statistics;
+    }
+
+    private int bucket(int year, int month, int day) {
+        return (monthIndex(year, month) - baseMonth) * DAYS + day - 1;
+    }
+
+    private static int monthIndex(int year, int month) {
+        return year * 12 + month - 1;
+    }
+
+    private static class Buckets {
+        private final long[] amounts;
+        private final long[] counts;
+
+        Buckets(int size) {
+            this.amounts = new long[size];
+            this.counts = new long[size];
+        }
+
+        void add(int bucket, long amount) {
+            amounts[bucket] += amount;
+            counts[bucket]++;
+        }
+
+        void merge(Buckets other) {
+            for (int i = 0; i < amounts.length; i++) {
+                amounts[i] += other.amounts[i];
+                counts[i] += other.counts[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.spring.batch.part5;
+
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/*
+
+    DayBucketOrderAggregator로 orders를 한 번 읽어 합산한 뒤 일별 OrderStatistics를 하나씩 내보내는 ItemReader
+    합산은 첫 read에서 한 번만 하고, 재시작 시에는 다시 합산한 뒤 이미 쓴 건수만큼 건너뛴다.
+
+ */
+public class DayBucketOrderStatisticsItemReader extends AbstractItemCountingItemStreamItemReader<OrderStatistics> {
+
+    private final DayBucketOrderAggregator aggregator;
+    private final Executor executor;
+    private final int threads;
+
+    private Iterator<OrderStatistics> iterator;
+
+    // threads가 1 이하거나 executor가 없으면 커서 1개로 읽는다.
+    public DayBucketOrderStatisticsItemReader(DayBucketOrderAggregator aggregator, Executor executor, int threads, String name) {
+        this.aggregator = aggregator;
+        this.executor = executor;
+        this.threads = threads;
+        setName(name);
+    }
+
+    @Override
+    protected OrderStatistics doRead() {
+        if (iterator == null) {
+            iterator = (executor == null || threads <= 1
+                    ? aggregator.aggregate()
+                    : aggregator.aggregate(executor, threads)).iterator();
+        }
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Override
+    protected void doOpen() {
+        iterator = null;
+    }
+
+    @Override
+    protected void doClose() {
+        iterator = null;
+    }
+}
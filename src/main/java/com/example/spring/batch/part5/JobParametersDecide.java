@@ -12,20 +12,23 @@ public class JobParametersDecide implements JobExecutionDecider {
     public static final FlowExecutionStatus CONTINUE = new FlowExecutionStatus("CONTINUE");
 
     // JobParameters의 key로 key에 해당하는 파라미터값이 있는지 체크하기 위해
-    private final String key;
+    // 여러 개면 하나라도 있으면 CONTINUE
+    private final String[] keys;
 
-    public JobParametersDecide(String key) {
-        this.key = key;
+    public JobParametersDecide(String... keys) {
+        this.keys = keys;
     }
 
     @Override
     public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution) {
         // jobParameter로 주입 받은 키에 밸류가 있는지 체크
-        String value = jobExecution.getJobParameters().getString(key);
+        for (String key : keys) {
+            String value = jobExecution.getJobParameters().getString(key);
 
-        if (StringUtils.isEmpty(value)){
-            return FlowExecutionStatus.COMPLETED;
+            if (!StringUtils.isEmpty(value)){
+                return CONTINUE;
+            }
         }
-        return CONTINUE;
+        return FlowExecutionStatus.COMPLETED;
     }
 }
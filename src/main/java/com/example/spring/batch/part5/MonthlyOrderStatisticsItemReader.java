@@ -0,0 +1,41 @@
+package com.example.spring.batch.part5;
+
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import java.util.Iterator;
+
+/*
+
+    MonthlyOrderStatisticsPartitioner가 파티션 ExecutionContext에 저장한 한 달치 일별 합계를 하나씩 내보내는 ItemReader
+    ListItemReader와 달리 ItemStream이라서 읽은 건수를 StepExecutionContext에 저장하고,
+    재시작 시에는 같은 값을 다시 풀어서 이미 쓴 건수만큼 건너뛴다.
+
+ */
+public class MonthlyOrderStatisticsItemReader extends AbstractItemCountingItemStreamItemReader<OrderStatistics> {
+
+    private final String month;
+    private final String amounts;
+
+    private Iterator<OrderStatistics> iterator;
+
+    public MonthlyOrderStatisticsItemReader(String month, String amounts, String name) {
+        this.month = month;
+        this.amounts = amounts;
+        setName(name);
+    }
+
+    @Override
+    protected OrderStatistics doRead() {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Override
+    protected void doOpen() {
+        iterator = MonthlyOrderStatisticsPartitioner.statistics(month, amounts).iterator();
+    }
+
+    @Override
+    protected void doClose() {
+        iterator = null;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.spring.batch.part5;
+
+import org.springframework.batch.core.partition.support.PartitionNameProvider;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/*
+
+    from ~ to 의 월마다 파티션을 하나씩 만드는 Partitioner
+    전체 기간의 일별 합계는 statistics로 한 번만 조회하고, 월별로 나눠서 각 파티션의 ExecutionContext에 저장한다.
+    worker step은 자기 월의 값만 읽어서 파일 하나를 쓴다.
+
+    PartitionNameProvider를 구현했기 때문에 재시작 시에는 다시 조회하지 않고
+    실패한 월의 파티션만 저장된 ExecutionContext로 다시 실행된다.
+
+ */
+public class MonthlyOrderStatisticsPartitioner implements Partitioner, PartitionNameProvider {
+
+    public static final String MONTH_KEY = "month";
+    public static final String AMOUNTS_KEY = "amounts";
+
+    private final YearMonth from;
+    private final YearMonth to;
+    private final Supplier<List<OrderStatistics>> statistics;
+
+    public MonthlyOrderStatisticsPartitioner(YearMonth from, YearMonth to, Supplier<List<OrderStatistics>> statistics) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("to가 from보다 앞설 수 없습니다 : " + from + " ~ " + to);
+        }
+        this.from = from;
+        this.to = to;
+        this.statistics = statistics;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<YearMonth, StringBuilder> amounts = new HashMap<>();
+        for (OrderStatistics statistic : statistics.get()) {
+            StringBuilder builder = amounts.computeIfAbsent(YearMonth.from(statistic.getDate()), x -> new StringBuilder());
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(statistic.getDate().getDayOfMonth()).append('=').append(statistic.getAmount());
+        }
+
+        Map<String, ExecutionContext> result = new HashMap<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            ExecutionContext executionContext = new ExecutionContext();
+            executionContext.putString(MONTH_KEY, month.toString());
+            // "일=금액,일=금액" 형태, 주문이 없는 달은 빈 문자열
+            executionContext.putString(AMOUNTS_KEY, amounts.getOrDefault(month, new StringBuilder()).toString());
+            result.put(partitionName(month), executionContext);
+        }
+        return result;
+    }
+
+    @Override
+    public Collection<String> getPartitionNames(int gridSize) {
+        List<String> names = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            names.add(partitionName(month));
+        }
+        return names;
+    }
+
+    // AMOUNTS_KEY 값을 다시 일별 OrderStatistics로
+    public static List<OrderStatistics> statistics(String month, String amounts) {
+        YearMonth yearMonth = YearMonth.parse(month);
+        List<OrderStatistics> result = new ArrayList<>();
+        if (amounts == null || amounts.isEmpty()) {
+            return result;
+        }
+        for (String dayAmount : amounts.split(",")) {
+            int separator = dayAmount.indexOf('=');
+            LocalDate date = yearMonth.atDay(Integer.parseInt(dayAmount.substring(0, separator)));
+            result.add(OrderStatistics.builder()
+                    .amount(Long.parseLong(dayAmount.substring(separator + 1)))
+                    .date(date)
+                    .build());
+        }
+        return result;
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "month" + month;
+    }
+}
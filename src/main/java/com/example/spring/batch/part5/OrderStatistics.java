@@ -7,11 +7,12 @@ import java.time.LocalDate;
 
 @Getter
 public class OrderStatistics {
-    private String amount;
+    // 일별 합계는 int 범위(약 21억)를 넘을 수 있으므로 long
+    private long amount;
     private LocalDate date;
 
     @Builder
-    public OrderStatistics(String amount, LocalDate date) {
+    public OrderStatistics(long amount, LocalDate date) {
         this.amount = amount;
         this.date = date;
     }
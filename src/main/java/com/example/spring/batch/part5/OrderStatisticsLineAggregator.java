@@ -0,0 +1,26 @@
+package com.example.spring.batch.part5;
+
+import org.springframework.batch.item.file.transform.LineAggregator;
+
+/*
+
+    OrderStatistics를 "금액,yyyy-MM-dd" 한 줄로 만드는 LineAggregator
+    BeanWrapperFieldExtractor + DelimitedLineAggregator는 필드마다 reflection으로 값을 꺼내고 toString 하지만
+    여기서는 금액과 날짜를 StringBuilder에 바로 붙인다.
+    날짜는 LocalDate.toString()이 yyyy-MM-dd를 만들기 때문에 따로 인코딩하지 않는다.
+    (byte로 바로 쓰는 인코딩은 ChannelFlatFileItemWriter.Line.append(LocalDate) 하나만 둔다.)
+
+    StringBuilder를 재사용하므로 Thread 하나(FlatFileItemWriter 하나)에서만 사용한다.
+
+ */
+public class OrderStatisticsLineAggregator implements LineAggregator<OrderStatistics> {
+
+    private final StringBuilder line = new StringBuilder(32);
+
+    @Override
+    public String aggregate(OrderStatistics item) {
+        line.setLength(0);
+        line.append(item.getAmount()).append(',').append(item.getDate());
+        return line.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.spring.batch.part5;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/*
+
+    (금액 합계, 날짜) 조회 결과를 OrderStatistics로 매핑하는 RowMapper
+    rs.getString으로 읽어서 LocalDate.parse 하던 방식과 달리
+    금액은 getLong, 날짜는 JDBC 4.2 getObject(LocalDate)로 문자열을 거치지 않고 읽는다.
+
+ */
+public class OrderStatisticsRowMapper implements RowMapper<OrderStatistics> {
+
+    @Override
+    public OrderStatistics mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new OrderStatistics(rs.getLong(1), rs.getObject(2, LocalDate.class));
+    }
+}
@@ -19,11 +19,12 @@ public class Orders {
     private Long id;
 
     private String itemName;
-    private int amount;
+    // 금액 합계가 int 범위를 넘지 않도록 long, 기존 MySQL 테이블은 ddl-auto update로 바뀌지 않으므로 bigint로 직접 변경
+    private long amount;
     private LocalDate createdDate;
 
     @Builder
-    private Orders(String itemName, int amount, LocalDate createdDate) {
+    private Orders(String itemName, long amount, LocalDate createdDate) {
         this.itemName = itemName;
         this.amount = amount;
         this.createdDate = createdDate;
@@ -1,11 +1,17 @@
 package com.example.spring.batch.part6;
 
 import com.example.spring.batch.part4.LevelUpJobExecutionListener;
+import com.example.spring.batch.part4.PipelinedChunkTasklet;
 import com.example.spring.batch.part4.SaveUserTasklet;
 import com.example.spring.batch.part4.User;
+import com.example.spring.batch.part4.UserLevelUpItemWriter;
 import com.example.spring.batch.part4.UserRepository;
+import com.example.spring.batch.part4.UserTotalAmount;
+import com.example.spring.batch.part4.UserTotalAmountItemReader;
 import com.example.spring.batch.part5.JobParametersDecide;
 import com.example.spring.batch.part5.OrderStatistics;
+import com.example.spring.batch.part5.OrderStatisticsLineAggregator;
+import com.example.spring.batch.part5.OrderStatisticsRowMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
@@ -13,8 +19,6 @@ import org.springframework.batch.core.configuration.annotation.JobBuilderFactory
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
-import org.springframework.batch.integration.async.AsyncItemProcessor;
-import org.springframework.batch.integration.async.AsyncItemWriter;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
@@ -25,8 +29,6 @@ import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuild
 import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -35,9 +37,7 @@ import org.springframework.core.task.TaskExecutor;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Future;
@@ -56,6 +56,11 @@ public class AsyncUserConfiguration {
     // 성능측정을 위해 JOB_NAME을 설정, 같은 JOB을 복사해서 쓸 것이기 때문에 Bean 등에서 구분할 수 있게
     private final String JOB_NAME = "asyncUserJob";
     private final int CHUNK = 1000;
+    // step 하나에서 끝나지 않은 Future의 최대 개수
+    private final int MAX_IN_FLIGHT = 1000;
+    private final int FLUSH_SIZE = 200;
+    // 커밋을 기다리는 동안 미리 읽어둘 chunk 수
+    private final int PIPELINE_DEPTH = 2;
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final UserRepository userRepository;
@@ -86,7 +91,7 @@ public class AsyncUserConfiguration {
                 // saveUserStep - tasklet으로 실행됨, 테스트를 하기 위해 user를 저장하는  스텝
                 .start(this.saveUserStep())
                 // user의 등급을 조절하는 userLevelUpStep - chunk로 실행됨, user의 level 상태를 변경하는 스텝
-                .next(this.userLevelUpStep())
+                .next(this.userLevelUpStep(null))
                 .listener(new LevelUpJobExecutionListener(userRepository))
                 // JobParametersDecide클래스의 오버라이딩한 decide메서드를 통해 해당 특정 조건에 따라 FlowExectionStatus가 리턴이 된다.
                 // 특정 조건 = 파라미터의 밸류가 있는지 확인
@@ -115,16 +120,10 @@ public class AsyncUserConfiguration {
 
         String fileName = yearMonth.getYear() + "년_" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
         FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
                 .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
+                // reflection 없이 금액, 날짜를 바로 문자열로
+                .lineAggregator(new OrderStatisticsLineAggregator())
                 .name(JOB_NAME + "_orderStatisticsItemWriter")
                 .encoding("UTF-8")
                 .headerCallback(writer -> writer.write("total_amount,date"))
@@ -151,10 +150,7 @@ public class AsyncUserConfiguration {
 
         JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
                 .dataSource(this.dataSource)
-                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
-                        .amount(rs.getString(1))
-                        .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
+                .rowMapper(new OrderStatisticsRowMapper())
                 .pageSize(CHUNK)
                 .name(JOB_NAME + "_orderStatisticsItemReader")
                 // GruopBy, Where 절을 통해 쿼리문 amount의 합계와 crated_date를 조회한다.
@@ -173,12 +169,28 @@ public class AsyncUserConfiguration {
     @Bean(JOB_NAME + "_saveUserStep")
     public Step saveUserStep() {
         return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
-                .tasklet(new SaveUserTasklet(userRepository))
+                .tasklet(new SaveUserTasklet(dataSource))
                 .build();
     }
 
+    // pipelined=true 파라미터로 실행하면 chunk N을 쓰는 동안 chunk N+1을 미리 읽고 처리한다.
     @Bean(JOB_NAME + "_userLevelUpStep")
-    public Step userLevelUpStep() throws Exception {
+    @JobScope
+    public Step userLevelUpStep(@Value("#{jobParameters[pipelined]}") String pipelined) throws Exception {
+        if (Boolean.parseBoolean(pipelined)) {
+            PipelinedChunkTasklet<UserTotalAmount, UserTotalAmount> tasklet = new PipelinedChunkTasklet<>(
+                    new UserTotalAmountItemReader(dataSource, CHUNK, JOB_NAME + "_userItemReader"),
+                    pipelinedItemProcessor(),
+                    new UserLevelUpItemWriter<>(dataSource),
+                    PIPELINE_DEPTH,
+                    this.taskExecutor);
+
+            return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+                    // tasklet이 StepExecutionListener이므로 TaskletStep이 listener로도 등록한다.
+                    .tasklet(tasklet)
+                    .build();
+        }
+
         return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
                 // AsyncItemProcessor는 ItemReader에서 받은 Input 타입을 java.util.concurrent에서 제공되는 Future로 감싸서 output Item으로 제공된다.
                 .<User, Future<User>>chunk(CHUNK)
@@ -188,34 +200,34 @@ public class AsyncUserConfiguration {
                 .build();
     }
 
-    private AsyncItemWriter<User> itemWriter() {
-        ItemWriter<User> itemWriter = users -> users.forEach(x -> {
-            x.levelUp();
-            userRepository.save(x);
-        });
-        AsyncItemWriter<User> asyncItemWriter = new AsyncItemWriter<>();
-        // AsyncItemWriter는 Delegate 메서드로 itemWriter를 감싸게 된다.
-        asyncItemWriter.setDelegate(itemWriter);
-
-        return asyncItemWriter;
+    private CompletionOrderAsyncItemWriter<User> itemWriter() {
+        // 등급별로 묶어서 JDBC로 update
+        ItemWriter<User> itemWriter = new UserLevelUpItemWriter<>(dataSource);
+        // 순서와 상관없이 끝난 Future부터 모아서 FLUSH_SIZE 단위로 먼저 write 한다.
+        return new CompletionOrderAsyncItemWriter<>(itemWriter, FLUSH_SIZE);
     }
 
 
-    private AsyncItemProcessor<User, User> itemProcessor() {
-        ItemProcessor<User, User> itemProcessor = user -> {
+    private ItemProcessor<UserTotalAmount, UserTotalAmount> pipelinedItemProcessor() {
+        return user -> {
             // 등급 상향 대상인지 판별
             if (user.availableLevelUp()) {
                 return user;
             }
             return null;
         };
-        AsyncItemProcessor<User, User> asyncItemProcessor = new AsyncItemProcessor<>();
-        // asyncItemProcessor는 Delegate 메서드로 itemProcessor를 감싸게 된다.
-        asyncItemProcessor.setDelegate(itemProcessor);
-        // taskExecutor 주입
-        asyncItemProcessor.setTaskExecutor(this.taskExecutor);
+    }
 
-        return asyncItemProcessor;
+    private BoundedAsyncItemProcessor<User, User> itemProcessor() {
+        ItemProcessor<User, User> itemProcessor = user -> {
+            // 등급 상향 대상인지 판별
+            if (user.availableLevelUp()) {
+                return user;
+            }
+            return null;
+        };
+        // 끝나지 않은 Future가 MAX_IN_FLIGHT 개를 넘으면 앞의 작업이 끝날 때까지 기다린다.
+        return new BoundedAsyncItemProcessor<>(itemProcessor, this.taskExecutor, MAX_IN_FLIGHT);
 
     }
 
@@ -0,0 +1,180 @@
+package com.example.spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+
+    UserLevelUpPartitioner는 min ~ max id를 같은 간격으로 나누기 때문에
+    삭제된 user가 많거나 주문이 몰린 구간이 있으면 특정 파티션만 오래 걸린다.
+    이 Partitioner는 user id 인덱스를 blockSize 건씩 건너뛰며 block 경계를 찾고,
+    block마다 몇 명의 user만 골라 주문 건수를 세서 block의 (user + 주문) 양을 추정한 뒤
+    각 파티션의 추정량이 비슷하도록 block을 묶는다.
+
+    - block 경계 : where id > 이전 경계 order by id limit 1 offset (blockSize - 1), user 인덱스만 읽는다.
+    - 주문 건수 표본 : block의 id 구간을 SAMPLES_PER_BLOCK 개로 나눈 위치에서 seek 한 user의 주문 건수 (orders.user_id 인덱스)
+    - orders 전체를 join, group by 하거나 전체 건수를 세지 않는다.
+
+    block 크기는 파티션 하나가 BLOCKS_PER_PARTITION 개 이상의 block으로 나뉘도록 id 범위에서 정하고, minBlockSize보다 작아지지 않는다.
+    ExecutionContext의 expectedUsers, expectedOrders는 표본으로 추정한 값이다.
+
+ */
+@Slf4j
+public class BalancedUserLevelUpPartitioner implements Partitioner {
+
+    private static final int BLOCKS_PER_PARTITION = 16;
+    private static final int SAMPLES_PER_BLOCK = 8;
+
+    private static final String SAMPLE_SQL = "select min(id) from user where id >= ? and id <= ?";
+    private static final String ORDER_COUNT_SQL = "select user_id, count(*) from orders"
+            + " where user_id in (:ids)"
+            + " group by user_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final int minBlockSize;
+
+    public BalancedUserLevelUpPartitioner(DataSource dataSource, int minBlockSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.minBlockSize = minBlockSize;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> result = new HashMap<>();
+        Long minId = jdbcTemplate.queryForObject("select min(id) from user", Long.class);
+        if (minId == null) {
+            return result;
+        }
+        long maxId = jdbcTemplate.queryForObject("select max(id) from user", Long.class);
+
+        List<Range> blocks = blocks(minId, maxId, blockSize(minId, maxId, gridSize));
+        long totalWeight = blocks.stream().mapToLong(Range::weight).sum();
+        // 파티션 하나가 처리할 목표 작업량
+        long targetWeight = totalWeight / gridSize + 1;
+
+        Range range = new Range();
+        for (Range block : blocks) {
+            range.add(block);
+
+            // 마지막 파티션은 남은 block을 모두 가져간다.
+            if (range.weight() >= targetWeight && result.size() < gridSize - 1) {
+                result.put("partition" + result.size(), range.toExecutionContext());
+                range = new Range();
+            }
+        }
+
+        if (!range.isEmpty()) {
+            result.put("partition" + result.size(), range.toExecutionContext());
+        }
+
+        result.forEach((name, context) -> log.info("{} : id {} ~ {}, user {}건, order 약 {}건", name,
+                context.getLong("minId"), context.getLong("maxId"),
+                context.getLong("expectedUsers"), context.getLong("expectedOrders")));
+
+        return result;
+    }
+
+    private int blockSize(long minId, long maxId, int gridSize) {
+        long idSpan = maxId - minId + 1;
+        return (int) Math.max(minBlockSize, idSpan / ((long) gridSize * BLOCKS_PER_PARTITION));
+    }
+
+    // minId부터 blockSize 건씩 block을 나누고 block마다 주문 건수를 추정한다.
+    private List<Range> blocks(long minId, long maxId, int blockSize) {
+        String blockEndSql = "select id from user where id > ? order by id limit 1 offset " + (blockSize - 1);
+
+        List<Range> blocks = new ArrayList<>();
+        long start = minId;
+        while (start <= maxId) {
+            List<Long> end = jdbcTemplate.queryForList(blockEndSql, Long.class, start - 1);
+
+            Range block = new Range();
+            if (end.isEmpty()) {
+                // 마지막 block은 blockSize보다 적으므로 건수를 센다.
+                long users = jdbcTemplate.queryForObject("select count(*) from user where id >= ?", Long.class, start);
+                block.add(start, maxId, users, estimateOrders(start, maxId, users));
+                blocks.add(block);
+                break;
+            }
+
+            block.add(start, end.get(0), blockSize, estimateOrders(start, end.get(0), blockSize));
+            blocks.add(block);
+            start = end.get(0) + 1;
+        }
+        return blocks;
+    }
+
+    // id 구간에서 고른 user들의 평균 주문 건수 x user 수
+    private long estimateOrders(long minId, long maxId, long users) {
+        List<Long> sampleIds = new ArrayList<>(SAMPLES_PER_BLOCK);
+        long step = Math.max(1, (maxId - minId + 1) / SAMPLES_PER_BLOCK);
+        for (long probe = minId; probe <= maxId && sampleIds.size() < SAMPLES_PER_BLOCK; probe += step) {
+            Long id = jdbcTemplate.queryForObject(SAMPLE_SQL, Long.class, probe, maxId);
+            if (id == null) {
+                break;
+            }
+            if (!sampleIds.contains(id)) {
+                sampleIds.add(id);
+            }
+        }
+        if (sampleIds.isEmpty()) {
+            return 0;
+        }
+
+        long[] orders = new long[1];
+        namedParameterJdbcTemplate.query(ORDER_COUNT_SQL, new MapSqlParameterSource("ids", sampleIds),
+                (RowCallbackHandler) rs -> orders[0] += rs.getLong(2));
+        return orders[0] * users / sampleIds.size();
+    }
+
+    // block 또는 여러 block을 묶은 파티션의 구간과 예상 처리량
+    private static class Range {
+        private long minId;
+        private long maxId;
+        private long users;
+        private long orders;
+
+        void add(long minId, long maxId, long users, long orders) {
+            if (isEmpty()) {
+                this.minId = minId;
+            }
+            this.maxId = maxId;
+            this.users += users;
+            this.orders += orders;
+        }
+
+        void add(Range block) {
+            add(block.minId, block.maxId, block.users, block.orders);
+        }
+
+        long weight() {
+            return users + orders;
+        }
+
+        boolean isEmpty() {
+            return users == 0;
+        }
+
+        ExecutionContext toExecutionContext() {
+            ExecutionContext context = new ExecutionContext();
+            context.putLong("minId", minId);
+            context.putLong("maxId", maxId);
+            context.putLong("expectedUsers", users);
+            context.putLong("expectedOrders", orders);
+            return context;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.spring.batch.part6;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.concurrent.ListenableFutureTask;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/*
+
+    AsyncItemProcessor와 같이 delegate를 TaskExecutor에서 실행하고 Future를 넘기지만
+    아직 끝나지 않은 Future 수를 maxInFlight로 제한한다.
+    제한에 걸리면 Reader 쪽 Thread가 앞의 작업이 끝날 때까지 기다리므로 Future가 끝없이 쌓이지 않는다.
+
+    같은 step의 partition들이 이 Processor 하나를 같이 쓰므로 제한은 step 단위다.
+    Future는 ListenableFuture이므로 CompletionOrderAsyncItemWriter가 완료 callback으로 끝난 순서대로 받는다.
+
+ */
+public class BoundedAsyncItemProcessor<I, O> implements ItemProcessor<I, Future<O>> {
+
+    private final ItemProcessor<I, O> delegate;
+    private final TaskExecutor taskExecutor;
+    private final Semaphore inFlight;
+
+    public BoundedAsyncItemProcessor(ItemProcessor<I, O> delegate, TaskExecutor taskExecutor, int maxInFlight) {
+        this.delegate = delegate;
+        this.taskExecutor = taskExecutor;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public Future<O> process(I item) throws Exception {
+        StepExecution stepExecution = currentStepExecution();
+
+        inFlight.acquire();
+        ListenableFutureTask<O> task = new ListenableFutureTask<>(() -> {
+            // step scope Bean을 사용할 수 있도록 작업 Thread에도 StepExecution 등록
+            if (stepExecution != null) {
+                StepSynchronizationManager.register(stepExecution);
+            }
+            try {
+                return delegate.process(item);
+            } finally {
+                if (stepExecution != null) {
+                    StepSynchronizationManager.close();
+                }
+                inFlight.release();
+            }
+        });
+
+        try {
+            taskExecutor.execute(task);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+        return task;
+    }
+
+    private StepExecution currentStepExecution() {
+        StepContext context = StepSynchronizationManager.getContext();
+        return context == null ? null : context.getStepExecution();
+    }
+}
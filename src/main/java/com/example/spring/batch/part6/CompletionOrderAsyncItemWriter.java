@@ -0,0 +1,143 @@
+package com.example.spring.batch.part6;
+
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.batch.core.metrics.BatchMetrics;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+
+    AsyncItemWriter는 chunk의 Future를 순서대로 get() 하기 때문에 앞쪽의 느린 item 하나가 chunk 전체를 막는다.
+    이 Writer는 끝난 Future부터 꺼내고, flushSize 만큼 모이면 나머지를 기다리지 않고 delegate로 먼저 write 한다.
+    모든 write는 같은 chunk 트랜잭션 안에서 실행된다.
+
+    ListenableFuture(BoundedAsyncItemProcessor)는 완료 callback이 큐에 넣어주므로 순회 없이 끝난 순서대로 꺼낸다.
+    그 외의 Future는 AsyncItemWriter와 같이 마지막에 순서대로 get() 한다.
+
+    끝난 Future가 없어서 기다린 시간은 spring.batch.item.future.wait Timer(step 이름 tag)로 기록한다.
+
+ */
+public class CompletionOrderAsyncItemWriter<T> implements ItemStreamWriter<Future<T>> {
+
+    private static final String WAIT_METRIC = "item.future.wait";
+
+    private final ItemWriter<T> delegate;
+    private final int flushSize;
+
+    public CompletionOrderAsyncItemWriter(ItemWriter<T> delegate, int flushSize) {
+        this.delegate = delegate;
+        this.flushSize = flushSize;
+    }
+
+    @Override
+    public void write(List<? extends Future<T>> items) throws Exception {
+        // 완료 callback이 끝난 Future를 넣는 큐
+        BlockingQueue<Future<T>> done = new LinkedBlockingQueue<>();
+        List<Future<T>> others = new ArrayList<>();
+        int listenable = 0;
+        for (Future<T> future : items) {
+            if (future instanceof ListenableFuture) {
+                // 이미 끝난 Future면 바로 callback이 실행된다.
+                ((ListenableFuture<T>) future).addCallback(result -> done.add(future), e -> done.add(future));
+                listenable++;
+            } else {
+                others.add(future);
+            }
+        }
+
+        List<T> completed = new ArrayList<>(Math.min(flushSize, items.size()));
+        long waitNanos = 0;
+
+        for (int i = 0; i < listenable + others.size(); i++) {
+            Future<T> future;
+            if (i < listenable) {
+                future = done.poll();
+                if (future == null) {
+                    long start = System.nanoTime();
+                    future = done.take();
+                    waitNanos += System.nanoTime() - start;
+                }
+            } else {
+                future = others.get(i - listenable);
+                if (!future.isDone()) {
+                    long start = System.nanoTime();
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        // 아래 unwrap에서 원인 예외를 던진다.
+                    }
+                    waitNanos += System.nanoTime() - start;
+                }
+            }
+
+            T item = unwrap(future);
+            // processor에서 걸러진 item
+            if (item != null) {
+                completed.add(item);
+            }
+            if (completed.size() >= flushSize) {
+                delegate.write(completed);
+                completed = new ArrayList<>(flushSize);
+            }
+        }
+
+        if (!completed.isEmpty()) {
+            delegate.write(completed);
+        }
+
+        waitTimer().record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private T unwrap(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private Timer waitTimer() {
+        StepContext context = StepSynchronizationManager.getContext();
+        String stepName = context == null ? "unknown" : context.getStepName();
+        return BatchMetrics.createTimer(WAIT_METRIC, "Future 완료를 기다린 시간", Tag.of("step", stepName));
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).open(executionContext);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).update(executionContext);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (delegate instanceof ItemStream) {
+            ((ItemStream) delegate).close();
+        }
+    }
+}
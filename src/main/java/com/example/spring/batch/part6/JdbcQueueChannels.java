@@ -0,0 +1,41 @@
+package com.example.spring.batch.part6;
+
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.jdbc.store.JdbcChannelMessageStore;
+import org.springframework.integration.jdbc.store.channel.ChannelMessageStoreQueryProvider;
+import org.springframework.integration.jdbc.store.channel.H2ChannelMessageStoreQueryProvider;
+import org.springframework.integration.jdbc.store.channel.MySqlChannelMessageStoreQueryProvider;
+import org.springframework.integration.store.MessageGroupQueue;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+/*
+
+    별도 브로커 없이 DB의 INT_CHANNEL_MESSAGE 테이블을 메시지 큐로 사용하는 QueueChannel
+    같은 DB를 보는 JVM끼리는 groupId가 같으면 같은 큐를 공유한다.
+    H2 in-memory는 JVM 하나에서만 보이므로 여러 JVM으로 실행할 때는 mysql profile을 사용한다.
+
+ */
+public final class JdbcQueueChannels {
+
+    private JdbcQueueChannels() {
+    }
+
+    public static QueueChannel queueChannel(DataSource dataSource, String groupId) throws MetaDataAccessException {
+        JdbcChannelMessageStore messageStore = new JdbcChannelMessageStore(dataSource);
+        messageStore.setChannelMessageStoreQueryProvider(queryProvider(dataSource));
+
+        return new QueueChannel(new MessageGroupQueue(messageStore, groupId));
+    }
+
+    private static ChannelMessageStoreQueryProvider queryProvider(DataSource dataSource) throws MetaDataAccessException {
+        String productName = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        if ("MySQL".equalsIgnoreCase(productName)) {
+            return new MySqlChannelMessageStoreQueryProvider();
+        }
+        return new H2ChannelMessageStoreQueryProvider();
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.spring.batch.part6;
+
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.repeat.RepeatContext;
+import org.springframework.batch.repeat.context.RepeatContextSupport;
+import org.springframework.batch.repeat.policy.CompletionPolicySupport;
+
+/*
+
+    chunk 시작 시점에 LevelUpSizingListener가 정한 chunkSize로 chunk 크기를 정하는 CompletionPolicy
+    여러 파티션 Thread가 같은 step(같은 policy)을 실행하므로 policy에는 값을 두지 않고
+    chunk마다 만드는 RepeatContext에 chunk 크기를 고정한다.
+    chunkSize는 manager step이 파티션을 나누기 전에 한 번만 저장하므로 step 실행 동안 바뀌지 않는다.
+
+ */
+public class JobChunkSizeCompletionPolicy extends CompletionPolicySupport {
+
+    @Override
+    public RepeatContext start(RepeatContext parent) {
+        StepContext stepContext = StepSynchronizationManager.getContext();
+        int chunkSize = stepContext == null
+                ? LevelUpSizingListener.DEFAULT_CHUNK_SIZE
+                : LevelUpSizingListener.chunkSize(stepContext.getStepExecution().getJobExecution());
+        return new ChunkSizeContext(parent, chunkSize);
+    }
+
+    @Override
+    public boolean isComplete(RepeatContext context) {
+        ChunkSizeContext chunkSizeContext = (ChunkSizeContext) context;
+        return chunkSizeContext.getStartedCount() >= chunkSizeContext.chunkSize;
+    }
+
+    private static class ChunkSizeContext extends RepeatContextSupport {
+
+        private final int chunkSize;
+
+        ChunkSizeContext(RepeatContext parent, int chunkSize) {
+            super(parent);
+            this.chunkSize = chunkSize;
+        }
+    }
+}
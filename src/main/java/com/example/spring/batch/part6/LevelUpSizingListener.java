@@ -0,0 +1,111 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.VirtualThreadTaskExecutor;
+import com.example.spring.batch.part4.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/*
+
+    파티션 manager step 시작 시점에 user 수, CPU 코어 수, taskExecutor 최대 Thread 수, 사용 가능한 커넥션 수를 보고
+    파티션 gridSize와 chunk 크기를 정해서 JobExecutionContext에 저장하는 Listener
+    같은 jar를 4코어 장비와 64코어 장비에서 코드 변경 없이 실행하기 위해
+
+    Job 시작 시점에는 saveUserStep이 아직 user를 저장하지 않았으므로 manager step에 등록한다.
+    remote worker도 같은 값을 읽을 수 있도록 파티션을 보내기 전에 JobExecutionContext를 저장한다.
+    재시작 시에는 이전 실행의 JobExecutionContext가 복원되므로 처음 정한 값을 그대로 사용한다.
+
+ */
+@Slf4j
+public class LevelUpSizingListener implements StepExecutionListener {
+
+    public static final String GRID_SIZE_KEY = "gridSize";
+    public static final String CHUNK_SIZE_KEY = "chunkSize";
+
+    // JobExecutionContext에 값이 없을 때 (Step만 단독 실행 등) 사용하는 기존 값
+    private static final int DEFAULT_GRID_SIZE = 8;
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    // 파티션 하나가 최소한 처리해야 하는 user 수, 이보다 적으면 파티션을 나누는 비용이 더 크다.
+    private static final long MIN_USERS_PER_PARTITION = 10_000;
+    // 파티션 하나가 최소 몇 번의 chunk로 나뉘어 커밋되도록 할지
+    private static final long CHUNKS_PER_PARTITION = 10;
+    private static final int MIN_CHUNK_SIZE = 100;
+    private static final int MAX_CHUNK_SIZE = 5_000;
+    // 파티션은 chunk마다 DB를 기다리는 동안 CPU를 쓰지 않으므로 코어당 2개까지만 동시에 실행한다.
+    // virtual thread executor처럼 Thread 수가 크게 잡혀 있어도 CPU보다 많이 나누지 않기 위해
+    private static final int PARTITIONS_PER_PROCESSOR = 2;
+
+    private final UserRepository userRepository;
+    private final TaskExecutor taskExecutor;
+    // JobRepository 갱신에 쓸 커넥션을 뺀 커넥션 수, BatchTaskExecutors.connectionBudget()
+    private final int connectionBudget;
+    private final JobRepository jobRepository;
+
+    public LevelUpSizingListener(UserRepository userRepository, TaskExecutor taskExecutor,
+                                 int connectionBudget, JobRepository jobRepository) {
+        this.userRepository = userRepository;
+        this.taskExecutor = taskExecutor;
+        this.connectionBudget = connectionBudget;
+        this.jobRepository = jobRepository;
+    }
+
+    public static int gridSize(JobExecution jobExecution) {
+        return jobExecution.getExecutionContext().getInt(GRID_SIZE_KEY, DEFAULT_GRID_SIZE);
+    }
+
+    public static int chunkSize(JobExecution jobExecution) {
+        return jobExecution.getExecutionContext().getInt(CHUNK_SIZE_KEY, DEFAULT_CHUNK_SIZE);
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        JobExecution jobExecution = stepExecution.getJobExecution();
+        ExecutionContext executionContext = jobExecution.getExecutionContext();
+        if (executionContext.containsKey(GRID_SIZE_KEY) && executionContext.containsKey(CHUNK_SIZE_KEY)) {
+            log.info("이전 실행의 gridSize {}, chunkSize {} 사용", gridSize(jobExecution), chunkSize(jobExecution));
+            return;
+        }
+
+        long userCount = userRepository.count();
+        int processors = Runtime.getRuntime().availableProcessors();
+        int maxThreads = maxThreads(processors);
+
+        long partitionsByData = Math.max(1, userCount / MIN_USERS_PER_PARTITION);
+        int partitionsByCpu = processors * PARTITIONS_PER_PROCESSOR;
+        int gridSize = (int) Math.max(1, Math.min(partitionsByData,
+                Math.min(partitionsByCpu, Math.min(maxThreads, connectionBudget))));
+
+        long chunkSize = userCount / ((long) gridSize * CHUNKS_PER_PARTITION);
+        chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+
+        executionContext.putInt(GRID_SIZE_KEY, gridSize);
+        executionContext.putInt(CHUNK_SIZE_KEY, (int) chunkSize);
+        jobRepository.updateExecutionContext(jobExecution);
+
+        log.info("user {}건, CPU {}개 (파티션 {}개까지), 최대 Thread {}개, 사용 가능 커넥션 {}개 -> gridSize {}, chunkSize {}",
+                userCount, processors, partitionsByCpu, maxThreads, connectionBudget, gridSize, chunkSize);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        return stepExecution.getExitStatus();
+    }
+
+    private int maxThreads(int processors) {
+        if (taskExecutor instanceof ThreadPoolTaskExecutor) {
+            return ((ThreadPoolTaskExecutor) taskExecutor).getMaxPoolSize();
+        }
+        if (taskExecutor instanceof VirtualThreadTaskExecutor) {
+            return ((VirtualThreadTaskExecutor) taskExecutor).getConcurrencyLimit();
+        }
+        return processors;
+    }
+}
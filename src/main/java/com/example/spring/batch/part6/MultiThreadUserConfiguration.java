@@ -3,9 +3,12 @@ package com.example.spring.batch.part6;
 import com.example.spring.batch.part4.LevelUpJobExecutionListener;
 import com.example.spring.batch.part4.SaveUserTasklet;
 import com.example.spring.batch.part4.User;
+import com.example.spring.batch.part4.UserLevelUpItemWriter;
 import com.example.spring.batch.part4.UserRepository;
 import com.example.spring.batch.part5.JobParametersDecide;
 import com.example.spring.batch.part5.OrderStatistics;
+import com.example.spring.batch.part5.OrderStatisticsLineAggregator;
+import com.example.spring.batch.part5.OrderStatisticsRowMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
@@ -23,8 +26,6 @@ import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuild
 import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -33,9 +34,7 @@ import org.springframework.core.task.TaskExecutor;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -111,16 +110,10 @@ public class MultiThreadUserConfiguration {
 
         String fileName = yearMonth.getYear() + "년_" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
         FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
                 .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
+                // reflection 없이 금액, 날짜를 바로 문자열로
+                .lineAggregator(new OrderStatisticsLineAggregator())
                 .name(JOB_NAME + "_orderStatisticsItemWriter")
                 .encoding("UTF-8")
                 .headerCallback(writer -> writer.write("total_amount,date"))
@@ -147,10 +140,7 @@ public class MultiThreadUserConfiguration {
 
         JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
                 .dataSource(this.dataSource)
-                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
-                        .amount(rs.getString(1))
-                        .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
+                .rowMapper(new OrderStatisticsRowMapper())
                 .pageSize(CHUNK)
                 .name(JOB_NAME + "_orderStatisticsItemReader")
                 // GruopBy, Where 절을 통해 쿼리문 amount의 합계와 crated_date를 조회한다.
@@ -169,7 +159,7 @@ public class MultiThreadUserConfiguration {
     @Bean(JOB_NAME + "_saveUserStep")
     public Step saveUserStep() {
         return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
-                .tasklet(new SaveUserTasklet(userRepository))
+                .tasklet(new SaveUserTasklet(dataSource))
                 .build();
     }
 
@@ -187,11 +177,9 @@ public class MultiThreadUserConfiguration {
                 .build();
     }
 
+    // 등급별로 묶어서 JDBC로 update
     private ItemWriter<? super User> itemWriter() {
-        return users -> users.forEach(x -> {
-            x.levelUp();
-            userRepository.save(x);
-        });
+        return new UserLevelUpItemWriter<>(dataSource);
     }
 
 
@@ -1,15 +1,22 @@
 package com.example.spring.batch.part6;
 
+import com.example.spring.batch.BatchTaskExecutors;
 import com.example.spring.batch.part4.LevelUpJobExecutionListener;
 import com.example.spring.batch.part4.SaveUserTasklet;
 import com.example.spring.batch.part4.User;
+import com.example.spring.batch.part4.UserLevelUpItemWriter;
 import com.example.spring.batch.part4.UserRepository;
 import com.example.spring.batch.part5.JobParametersDecide;
 import com.example.spring.batch.part5.OrderStatistics;
+import com.example.spring.batch.part5.OrderStatisticsLineAggregator;
+import com.example.spring.batch.part5.OrderStatisticsRowMapper;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecutionListener;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
@@ -18,8 +25,7 @@ import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.flow.Flow;
 import org.springframework.batch.core.job.flow.support.SimpleFlow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
-import org.springframework.batch.core.partition.PartitionHandler;
-import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.tasklet.TaskletStep;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
@@ -31,20 +37,15 @@ import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuild
 import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.task.TaskExecutor;
 
 import javax.persistence.EntityManagerFactory;
 import javax.print.attribute.standard.JobName;
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -67,8 +68,9 @@ public class ParallelUserConfiguration {
     private final UserRepository userRepository;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
-    // SpringBatchExampleApplication에서 만든 taskExecutor Bean
-    private final TaskExecutor taskExecutor;
+    // SpringBatchExampleApplication에서 만든 역할별 TaskExecutor
+    private final BatchTaskExecutors taskExecutors;
+    private final JobRepository jobRepository;
 
 
     public ParallelUserConfiguration(JobBuilderFactory jobBuilderFactory,
@@ -76,13 +78,15 @@ public class ParallelUserConfiguration {
                                      UserRepository userRepository,
                                      EntityManagerFactory entityManagerFactory,
                                      DataSource dataSource,
-                                     TaskExecutor taskExecutor) {
+                                     BatchTaskExecutors taskExecutors,
+                                     JobRepository jobRepository) {
         this.jobBuilderFactory = jobBuilderFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.userRepository = userRepository;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
-        this.taskExecutor = taskExecutor;
+        this.taskExecutors = taskExecutors;
+        this.jobRepository = jobRepository;
     }
 
     @Bean(JOB_NAME)
@@ -90,6 +94,8 @@ public class ParallelUserConfiguration {
         return this.jobBuilderFactory.get(JOB_NAME)
                 .incrementer(new RunIdIncrementer())
                 .listener(new LevelUpJobExecutionListener(userRepository))
+                // 역할별 TaskExecutor metric을 Job 단위로 기록한다.
+                .listener((JobExecutionListener) new TaskExecutorSizingListener(taskExecutors))
                 // Flow로 감싼 새로운 saveUserStep을 이식해서 만든 saveUserFlow()
                 .start(this.saveUserFlow())
                 // userLevelUpFlow와 orderStaticsFlow를 합친 splitFlow가 병렬처리 되도록
@@ -110,7 +116,7 @@ public class ParallelUserConfiguration {
     public Flow saveUserFlow() {
         // 기존에 만들었던 saveUserStep을 Flow로 감싸기위해 TaskletStep 변수에 이식
         TaskletStep saveUserStep = this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
-                .tasklet(new SaveUserTasklet(userRepository))
+                .tasklet(new SaveUserTasklet(dataSource))
                 .build();
 
         // Flow로 감싸서 리턴
@@ -135,7 +141,7 @@ public class ParallelUserConfiguration {
         // userLevelUpStep과 orderStatisticsStep을 하나로 합친다.
         // 하나의 Flow로 만들기위해서 각각도 Flow로 만들어야한다.
         return new FlowBuilder<SimpleFlow>(JOB_NAME + "_splitFlow")
-                .split(this.taskExecutor)
+                .split(this.taskExecutors.flow())
                 .add(userLevelUpFLow, orderStatisticsFlow(date))
                 .build();
     }
@@ -170,16 +176,10 @@ public class ParallelUserConfiguration {
 
         String fileName = yearMonth.getYear() + "년_" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
         FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
                 .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
+                // reflection 없이 금액, 날짜를 바로 문자열로
+                .lineAggregator(new OrderStatisticsLineAggregator())
                 .name(JOB_NAME + "_orderStatisticsItemWriter")
                 .encoding("UTF-8")
                 .headerCallback(writer -> writer.write("total_amount,date"))
@@ -206,10 +206,7 @@ public class ParallelUserConfiguration {
 
         JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
                 .dataSource(this.dataSource)
-                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
-                        .amount(rs.getString(1))
-                        .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
+                .rowMapper(new OrderStatisticsRowMapper())
                 .pageSize(CHUNK)
                 .name(JOB_NAME + "_orderStatisticsItemReader")
                 // GruopBy, Where 절을 통해 쿼리문 amount의 합계와 crated_date를 조회한다.
@@ -228,28 +225,27 @@ public class ParallelUserConfiguration {
 //    @Bean(JOB_NAME + "_saveUserStep")
 //    public Step saveUserStep() {
 //        return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
-//                .tasklet(new SaveUserTasklet(userRepository))
+//                .tasklet(new SaveUserTasklet(dataSource))
 //                .build();
 //    }
 
     @Bean(JOB_NAME + "_userLevelUpStep")
     public Step userLevelUpStep() throws Exception {
         return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
-                .<User, User>chunk(CHUNK)
+                // chunk 크기는 LevelUpSizingListener가 정한 값
+                .<User, User>chunk(new JobChunkSizeCompletionPolicy())
 //                .reader(itemReader())
                 // ParallelStep + PartitionStep을 사용하기 위해
-                .reader(itemReader(null, null))
+                .reader(itemReader(null, null, null, null))
                 .processor(itemProcessor())
                 .writer(itemWriter())
                 .build();
     }
 
 
+    // 등급별로 묶어서 JDBC로 update
     private ItemWriter<? super User> itemWriter() {
-        return users -> users.forEach(x -> {
-            x.levelUp();
-            userRepository.save(x);
-        });
+        return new UserLevelUpItemWriter<>(dataSource);
     }
 
 /*
@@ -272,24 +268,27 @@ public class ParallelUserConfiguration {
     // StepScope가 필요하고 StepSope로 사용하려면 Bean설정을 해야함
     @Bean(JOB_NAME + "_userItemReader")
     @StepScope
-    JpaPagingItemReader<? extends User> itemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
-                                                   @Value("#{stepExecutionContext[maxId]}") Long maxId) throws Exception {
-
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("minId", minId);
-        parameters.put("maxId", maxId);
-
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .queryString("select u from User u where u.id between :minId and :maxId")
-                .parameterValues(parameters)
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(CHUNK)
-                .name(JOB_NAME + "_userItemReader")
-                .build();
-
-        itemReader.afterPropertiesSet();
-
-        return itemReader;
+    StealableJpaKeysetPagingItemReader<User> itemReader(@Value("#{stepExecution}") StepExecution stepExecution,
+                                                        @Value("#{stepExecutionContext[minId]}") Long minId,
+                                                        @Value("#{stepExecutionContext[maxId]}") Long maxId,
+                                                        @Value("#{jobExecutionContext[chunkSize]}") Integer chunkSize) throws Exception {
+
+        // WorkStealingPartitionHandler가 다른 Worker에게 뒤쪽 구간을 넘길 수 있도록 공유하는 구간
+        StealableIdRange range = workStealingPartitionHandler().rangeOf(stepExecution);
+        if (range == null) {
+            range = new StealableIdRange(minId, maxId);
+        }
+
+        // OFFSET 대신 마지막으로 읽은 id 이후부터 읽도록 keyset 페이징
+        return new StealableJpaKeysetPagingItemReader<>(
+                entityManagerFactory,
+                "select u from User u where u.id > :lastId and u.id <= :maxId order by u.id",
+                User.class,
+                User::getId,
+                range,
+                minId - 1,
+                chunkSize == null ? CHUNK : chunkSize,
+                JOB_NAME + "_userItemReader");
     }
 
     // ParallelStep + PartitionStep을 사용하기 위해
@@ -297,24 +296,23 @@ public class ParallelUserConfiguration {
     @Bean(JOB_NAME + "_userLevelUpStep.manager")
     public Step userLevelUpManagerStep() throws Exception {
         return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep.manager")
-                .partitioner(JOB_NAME + "_userLevelUpStep", new UserLevelUpPartitioner(userRepository))
+                // id 간격이 아닌 user, orders 건수 기준으로 구간을 나눈다.
+                .partitioner(JOB_NAME + "_userLevelUpStep", new BalancedUserLevelUpPartitioner(dataSource, CHUNK))
+                // saveUserStep이 저장한 데이터 양, CPU, Thread Pool, 커넥션 수를 보고 gridSize와 chunk 크기를 정한다.
+                .listener(new LevelUpSizingListener(userRepository, taskExecutors.partition(), taskExecutors.connectionBudget(), jobRepository))
+                // 정해진 gridSize, chunk 크기로 역할별 Thread 수를 맞춘다.
+                .listener((StepExecutionListener) new TaskExecutorSizingListener(taskExecutors))
                 // userLevelUpManagerStep이 마스터, userLevelUpStep이 슬레이브가 된다.
                 .step(userLevelUpStep())
-                .partitionHandler(taskExecutorPartitionHandler())
+                .partitionHandler(workStealingPartitionHandler())
                 .build();
     }
 
     // 이 PartitionHandler가 파티션을 핸들링할 수 있는 객체가 된다.
-    @Bean(JOB_NAME + "_taskExecutorPartitionHandler")
-    PartitionHandler taskExecutorPartitionHandler() throws Exception {
-        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
-        // 핸들러에 슬레이브스텝을 설정하고
-        handler.setStep(userLevelUpStep());
-        handler.setTaskExecutor(this.taskExecutor);
-        // 여기서 사용할 GridSize가 PartitionUserConfiguration에서 사용할 gridSize와 동일
-        handler.setGridSize(8);
-
-        return handler;
+    // 대기 중인 파티션이 없으면 실행 중인 파티션의 남은 구간 절반을 가져와서 처리한다.
+    @Bean(JOB_NAME + "_workStealingPartitionHandler")
+    WorkStealingPartitionHandler workStealingPartitionHandler() throws Exception {
+        return new WorkStealingPartitionHandler(userLevelUpStep(), this.taskExecutors.partition(), this.jobRepository);
     }
 
     private ItemProcessor<? super User, ? extends User> itemProcessor() {
@@ -1,46 +1,43 @@
 package com.example.spring.batch.part6;
 
+import com.example.spring.batch.BatchTaskExecutors;
 import com.example.spring.batch.part4.LevelUpJobExecutionListener;
 import com.example.spring.batch.part4.SaveUserTasklet;
 import com.example.spring.batch.part4.User;
+import com.example.spring.batch.part4.UserLevelUpItemWriter;
 import com.example.spring.batch.part4.UserRepository;
 import com.example.spring.batch.part5.JobParametersDecide;
 import com.example.spring.batch.part5.OrderStatistics;
+import com.example.spring.batch.part5.OrderStatisticsLineAggregator;
+import com.example.spring.batch.part5.OrderStatisticsRowMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecutionListener;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
-import org.springframework.batch.core.partition.PartitionHandler;
-import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
-import org.springframework.batch.integration.async.AsyncItemProcessor;
-import org.springframework.batch.integration.async.AsyncItemWriter;
+import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
 import org.springframework.batch.item.database.Order;
 import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.task.TaskExecutor;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Future;
@@ -59,26 +56,32 @@ public class PartitionUserConfiguration {
     // 성능측정을 위해 JOB_NAME을 설정, 같은 JOB을 복사해서 쓸 것이기 때문에 Bean 등에서 구분할 수 있게
     private final String JOB_NAME = "partitionUserJob";
     private final int CHUNK = 1000;
+    // step 하나에서 끝나지 않은 Future의 최대 개수
+    private final int MAX_IN_FLIGHT = 1000;
+    private final int FLUSH_SIZE = 200;
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final UserRepository userRepository;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
-    // SpringBatchExampleApplication에서 만든 taskExecutor Bean
-    private final TaskExecutor taskExecutor;
+    // SpringBatchExampleApplication에서 만든 역할별 TaskExecutor
+    private final BatchTaskExecutors taskExecutors;
+    private final JobRepository jobRepository;
 
     public PartitionUserConfiguration(JobBuilderFactory jobBuilderFactory,
                                       StepBuilderFactory stepBuilderFactory,
                                       UserRepository userRepository,
                                       EntityManagerFactory entityManagerFactory,
                                       DataSource dataSource,
-                                      TaskExecutor taskExecutor) {
+                                      BatchTaskExecutors taskExecutors,
+                                      JobRepository jobRepository) {
         this.jobBuilderFactory = jobBuilderFactory;
         this.stepBuilderFactory = stepBuilderFactory;
         this.userRepository = userRepository;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
-        this.taskExecutor = taskExecutor;
+        this.taskExecutors = taskExecutors;
+        this.jobRepository = jobRepository;
     }
 
     @Bean(JOB_NAME)
@@ -92,6 +95,8 @@ public class PartitionUserConfiguration {
                 // 기존의 위 스텝을 마스터 스텝으로 변경
                 .next(this.userLevelUpManagerStep())
                 .listener(new LevelUpJobExecutionListener(userRepository))
+                // 역할별 TaskExecutor metric을 Job 단위로 기록한다.
+                .listener((JobExecutionListener) new TaskExecutorSizingListener(taskExecutors))
                 // JobParametersDecide클래스의 오버라이딩한 decide메서드를 통해 해당 특정 조건에 따라 FlowExectionStatus가 리턴이 된다.
                 // 특정 조건 = 파라미터의 밸류가 있는지 확인
                 // 있으면 CONTINUE, 없으면 COMPLETED
@@ -119,16 +124,10 @@ public class PartitionUserConfiguration {
 
         String fileName = yearMonth.getYear() + "년_" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
         FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
                 .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
+                // reflection 없이 금액, 날짜를 바로 문자열로
+                .lineAggregator(new OrderStatisticsLineAggregator())
                 .name(JOB_NAME + "_orderStatisticsItemWriter")
                 .encoding("UTF-8")
                 .headerCallback(writer -> writer.write("total_amount,date"))
@@ -155,10 +154,7 @@ public class PartitionUserConfiguration {
 
         JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
                 .dataSource(this.dataSource)
-                .rowMapper((rs, rowNum) -> OrderStatistics.builder()
-                        .amount(rs.getString(1))
-                        .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
+                .rowMapper(new OrderStatisticsRowMapper())
                 .pageSize(CHUNK)
                 .name(JOB_NAME + "_orderStatisticsItemReader")
                 // GruopBy, Where 절을 통해 쿼리문 amount의 합계와 crated_date를 조회한다.
@@ -177,7 +173,7 @@ public class PartitionUserConfiguration {
     @Bean(JOB_NAME + "_saveUserStep")
     public Step saveUserStep() {
         return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
-                .tasklet(new SaveUserTasklet(userRepository))
+                .tasklet(new SaveUserTasklet(dataSource))
                 .build();
     }
 
@@ -188,9 +184,9 @@ public class PartitionUserConfiguration {
 //                .<User, User>chunk(CHUNK)
 
                 // <partitionStep에 AsyncStep까지 적용 시> Future 타입으로 output을 감싸줌줌
-               .<User, Future<User>>chunk(CHUNK)
+               .<User, Future<User>>chunk(new JobChunkSizeCompletionPolicy())
 
-                .reader(itemReader(null, null))
+                .reader(itemReader(null, null, null, null))
                 .processor(itemProcessor())
                 .writer(itemWriter())
                 .build();
@@ -200,24 +196,23 @@ public class PartitionUserConfiguration {
     @Bean(JOB_NAME + "_userLevelUpStep.manager")
     public Step userLevelUpManagerStep() throws Exception {
         return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep.manager")
-                .partitioner(JOB_NAME + "_userLevelUpStep", new UserLevelUpPartitioner(userRepository))
+                // id 간격이 아닌 user, orders 건수 기준으로 구간을 나눈다.
+                .partitioner(JOB_NAME + "_userLevelUpStep", new BalancedUserLevelUpPartitioner(dataSource, CHUNK))
+                // saveUserStep이 저장한 데이터 양, CPU, Thread Pool, 커넥션 수를 보고 gridSize와 chunk 크기를 정한다.
+                .listener(new LevelUpSizingListener(userRepository, taskExecutors.partition(), taskExecutors.connectionBudget(), jobRepository))
+                // 정해진 gridSize, chunk 크기로 역할별 Thread 수를 맞춘다.
+                .listener((StepExecutionListener) new TaskExecutorSizingListener(taskExecutors))
                 // userLevelUpManagerStep이 마스터, userLevelUpStep이 슬레이브가 된다.
                 .step(userLevelUpStep())
-                .partitionHandler(taskExecutorPartitionHandler())
+                .partitionHandler(workStealingPartitionHandler())
                 .build();
     }
 
     // 이 PartitionHandler가 파티션을 핸들링할 수 있는 객체가 된다.
-    @Bean(JOB_NAME + "_taskExecutorPartitionHandler")
-    PartitionHandler taskExecutorPartitionHandler() throws Exception {
-        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
-        // 핸들러에 슬레이브스텝을 설정하고
-        handler.setStep(userLevelUpStep());
-        handler.setTaskExecutor(this.taskExecutor);
-        // 여기서 사용할 GridSize가 PartitionUserConfiguration에서 사용할 gridSize와 동일
-        handler.setGridSize(8);
-
-        return handler;
+    // 대기 중인 파티션이 없으면 실행 중인 파티션의 남은 구간 절반을 가져와서 처리한다.
+    @Bean(JOB_NAME + "_workStealingPartitionHandler")
+    WorkStealingPartitionHandler workStealingPartitionHandler() throws Exception {
+        return new WorkStealingPartitionHandler(userLevelUpStep(), this.taskExecutors.partition(), this.jobRepository);
     }
 
 /* // 기존 itemrWriter, itemProcessor - <partitionStep만 적용 시>
@@ -241,20 +236,15 @@ public class PartitionUserConfiguration {
     */
 
     // itemrWriter, itemProcessor 변경 - <partitionStep에 AsyncStep까지 적용 시>
-    private AsyncItemWriter<User> itemWriter() {
-        ItemWriter<User> itemWriter = users -> users.forEach(x -> {
-            x.levelUp();
-            userRepository.save(x);
-        });
-        AsyncItemWriter<User> asyncItemWriter = new AsyncItemWriter<>();
-        // AsyncItemWriter는 Delegate 메서드로 itemWriter를 감싸게 된다.
-        asyncItemWriter.setDelegate(itemWriter);
-
-        return asyncItemWriter;
+    private CompletionOrderAsyncItemWriter<User> itemWriter() {
+        // 등급별로 묶어서 JDBC로 update
+        ItemWriter<User> itemWriter = new UserLevelUpItemWriter<>(dataSource);
+        // 순서와 상관없이 끝난 Future부터 모아서 FLUSH_SIZE 단위로 먼저 write 한다.
+        return new CompletionOrderAsyncItemWriter<>(itemWriter, FLUSH_SIZE);
     }
 
     // itemrWriter, itemProcessor 변경 - <partitionStep에 AsyncStep까지 적용 시>
-    private AsyncItemProcessor<User, User> itemProcessor() {
+    private BoundedAsyncItemProcessor<User, User> itemProcessor() {
         ItemProcessor<User, User> itemProcessor = user -> {
             // 등급 상향 대상인지 판별
             if (user.availableLevelUp()) {
@@ -262,13 +252,8 @@ public class PartitionUserConfiguration {
             }
             return null;
         };
-        AsyncItemProcessor<User, User> asyncItemProcessor = new AsyncItemProcessor<>();
-        // asyncItemProcessor는 Delegate 메서드로 itemProcessor를 감싸게 된다.
-        asyncItemProcessor.setDelegate(itemProcessor);
-        // taskExecutor 주입
-        asyncItemProcessor.setTaskExecutor(this.taskExecutor);
-
-        return asyncItemProcessor;
+        // 끝나지 않은 Future가 MAX_IN_FLIGHT 개를 넘으면 앞의 작업이 끝날 때까지 기다린다.
+        return new BoundedAsyncItemProcessor<>(itemProcessor, this.taskExecutors.asyncItem(), MAX_IN_FLIGHT);
 
     }
 
@@ -278,23 +263,26 @@ public class PartitionUserConfiguration {
     // StepScope가 필요하고 StepSope로 사용하려면 Bean설정을 해야함
     @Bean
     @StepScope
-    JpaPagingItemReader<? extends User> itemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
-                                                   @Value("#{stepExecutionContext[maxId]}") Long maxId) throws Exception {
-
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("minId", minId);
-        parameters.put("maxId", maxId);
-
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .queryString("select u from User u where u.id between :minId and :maxId")
-                .parameterValues(parameters)
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(CHUNK)
-                .name(JOB_NAME + "_userItemReader")
-                .build();
-
-        itemReader.afterPropertiesSet();
-
-        return itemReader;
+    StealableJpaKeysetPagingItemReader<User> itemReader(@Value("#{stepExecution}") StepExecution stepExecution,
+                                                        @Value("#{stepExecutionContext[minId]}") Long minId,
+                                                        @Value("#{stepExecutionContext[maxId]}") Long maxId,
+                                                        @Value("#{jobExecutionContext[chunkSize]}") Integer chunkSize) throws Exception {
+
+        // WorkStealingPartitionHandler가 다른 Worker에게 뒤쪽 구간을 넘길 수 있도록 공유하는 구간
+        StealableIdRange range = workStealingPartitionHandler().rangeOf(stepExecution);
+        if (range == null) {
+            range = new StealableIdRange(minId, maxId);
+        }
+
+        // OFFSET 대신 마지막으로 읽은 id 이후부터 읽도록 keyset 페이징
+        return new StealableJpaKeysetPagingItemReader<>(
+                entityManagerFactory,
+                "select u from User u where u.id > :lastId and u.id <= :maxId order by u.id",
+                User.class,
+                User::getId,
+                range,
+                minId - 1,
+                chunkSize == null ? CHUNK : chunkSize,
+                JOB_NAME + "_userItemReader");
     }
 }
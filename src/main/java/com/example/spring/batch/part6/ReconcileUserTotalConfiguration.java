@@ -0,0 +1,107 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.BatchTaskExecutors;
+import com.example.spring.batch.part4.UserTotalReconcileTasklet;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/*
+
+    user.total_amount가 orders 합계와 같은지 파티션별로 병렬 검사하고 어긋난 값을 고치는 Job
+    주문을 OrderIngestItemWriter(orderIngestJob), UserOrderBulkWriter 밖에서 직접 넣었을 때 실행한다.
+    total_amount 컬럼을 처음 추가했을 때는 db/mysql/user_total_amount_backfill.sql로 한 번에 채워도 된다.
+
+    파티션은 BalancedUserLevelUpPartitioner로 user + 주문 건수가 비슷하도록 나누고
+    Job 종료 시 어긋난 user 수, 금액 차이 합계를 보여준다.
+
+ */
+@Slf4j
+@Configuration
+public class ReconcileUserTotalConfiguration {
+
+    private final String JOB_NAME = "reconcileUserTotalJob";
+    private final int GRID_SIZE = 8;
+    // 한 번에 합산해서 커밋할 user id 구간
+    private final long RANGE_SIZE = 1000;
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final DataSource dataSource;
+    private final BatchTaskExecutors taskExecutors;
+
+    public ReconcileUserTotalConfiguration(JobBuilderFactory jobBuilderFactory,
+                                           StepBuilderFactory stepBuilderFactory,
+                                           DataSource dataSource,
+                                           BatchTaskExecutors taskExecutors) {
+        this.jobBuilderFactory = jobBuilderFactory;
+        this.stepBuilderFactory = stepBuilderFactory;
+        this.dataSource = dataSource;
+        this.taskExecutors = taskExecutors;
+    }
+
+    @Bean(JOB_NAME)
+    public Job reconcileUserTotalJob() {
+        return this.jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(this.reconcileManagerStep())
+                .listener(new JobExecutionListenerSupport() {
+                    @Override
+                    public void afterJob(JobExecution jobExecution) {
+                        logDrift(jobExecution);
+                    }
+                })
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_reconcileStep.manager")
+    public Step reconcileManagerStep() {
+        return this.stepBuilderFactory.get(JOB_NAME + "_reconcileStep.manager")
+                .partitioner(JOB_NAME + "_reconcileStep", new BalancedUserLevelUpPartitioner(dataSource, (int) RANGE_SIZE))
+                .step(reconcileStep())
+                .gridSize(GRID_SIZE)
+                .taskExecutor(this.taskExecutors.partition())
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_reconcileStep")
+    public Step reconcileStep() {
+        return this.stepBuilderFactory.get(JOB_NAME + "_reconcileStep")
+                .tasklet(reconcileTasklet(null, null))
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    UserTotalReconcileTasklet reconcileTasklet(@Value("#{stepExecutionContext[minId]}") Long minId,
+                                               @Value("#{stepExecutionContext[maxId]}") Long maxId) {
+        return new UserTotalReconcileTasklet(dataSource, minId, maxId, RANGE_SIZE);
+    }
+
+    private void logDrift(JobExecution jobExecution) {
+        long driftUsers = 0;
+        long driftAmount = 0;
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            ExecutionContext executionContext = stepExecution.getExecutionContext();
+            driftUsers += executionContext.getLong(UserTotalReconcileTasklet.DRIFT_USERS_KEY, 0L);
+            driftAmount += executionContext.getLong(UserTotalReconcileTasklet.DRIFT_AMOUNT_KEY, 0L);
+        }
+
+        log.info("----------------------------");
+        log.info("user 주문 금액 합계 검사 [{}]", jobExecution.getStatus());
+        log.info("불일치 user : {}명, 금액 차이 합계 : {}", driftUsers, driftAmount);
+        log.info("----------------------------");
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.part4.LevelUpJobExecutionListener;
+import com.example.spring.batch.part4.SaveUserTasklet;
+import com.example.spring.batch.part4.UserLevelUpItemWriter;
+import com.example.spring.batch.part4.UserRepository;
+import com.example.spring.batch.part4.UserTotalAmount;
+import com.example.spring.batch.part4.UserTotalAmountItemReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.step.item.SimpleChunkProcessor;
+import org.springframework.batch.integration.chunk.ChunkMessageChannelItemWriter;
+import org.springframework.batch.integration.chunk.ChunkProcessorChunkHandler;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.integration.dsl.Pollers;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+/*
+
+    Remote Chunking
+    manager는 user를 읽기만 하고, 읽은 chunk를 메시지 채널로 보내 worker가 processor, writer를 실행한다.
+    id 구간으로 나누기 어려운 경우나 읽기보다 등급 판별, 저장이 무거운 경우에 사용한다.
+
+    chunk가 메시지로 직렬화되어 전달되므로 lazy orders를 가진 User 대신
+    DB에서 합산한 UserTotalAmount 프로젝션을 읽어서 보낸다.
+
+    채널은 RemotePartitionUserConfiguration과 같이 DB(INT_CHANNEL_MESSAGE) 기반 큐를 사용한다.
+    local-worker profile이면 manager JVM 안에서 worker가 같이 실행되고 (H2 등),
+    mysql profile이면 worker profile로 띄운 다른 JVM이 처리한다.
+    둘 다 아니면 worker가 없으므로 manager는 응답을 기다리다 실패한다.
+
+    worker는 요청 메시지 삭제, chunk 저장, 응답 메시지 저장을 한 트랜잭션으로 처리한다. (모두 같은 DB)
+    worker가 중간에 죽으면 셋 다 롤백되고 요청은 큐에 남아서 다시 처리되므로 chunk가 두 번 저장되거나 응답이 두 번 가지 않는다.
+    processor, writer가 실패하면 savepoint까지만 롤백하고 실패 응답을 커밋하므로 manager step이 실패하고 같은 요청이 반복되지 않는다.
+
+    ex) java -jar app.jar --spring.profiles.active=mysql,worker &
+        java -jar app.jar --spring.profiles.active=mysql --job.name=remoteChunkingUserJob
+    ex) java -jar app.jar --spring.profiles.active=local-worker --job.name=remoteChunkingUserJob
+
+ */
+@Slf4j
+@Configuration
+public class RemoteChunkingUserConfiguration {
+
+    private final String JOB_NAME = "remoteChunkingUserJob";
+    private final int CHUNK = 1000;
+    // 응답을 받지 못한 chunk가 이 개수만큼 쌓이면 manager는 읽기를 멈추고 응답을 기다린다.
+    private final int THROTTLE_LIMIT = 4;
+    private final String REQUEST_GROUP = JOB_NAME + "_requests";
+    private final String REPLY_GROUP = JOB_NAME + "_replies";
+    private final long POLL_INTERVAL = 100;
+    // 응답 하나를 기다리는 시간, MAX_WAIT_TIMEOUTS 번 연속으로 받지 못하면 step 실패
+    private final long RECEIVE_TIMEOUT = 1000;
+    private final int MAX_WAIT_TIMEOUTS = 60;
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final UserRepository userRepository;
+    private final DataSource dataSource;
+    private final PlatformTransactionManager transactionManager;
+
+    public RemoteChunkingUserConfiguration(JobBuilderFactory jobBuilderFactory,
+                                           StepBuilderFactory stepBuilderFactory,
+                                           UserRepository userRepository,
+                                           DataSource dataSource,
+                                           PlatformTransactionManager transactionManager) {
+        this.jobBuilderFactory = jobBuilderFactory;
+        this.stepBuilderFactory = stepBuilderFactory;
+        this.userRepository = userRepository;
+        this.dataSource = dataSource;
+        this.transactionManager = transactionManager;
+    }
+
+    @Bean(JOB_NAME)
+    public Job userJob() throws Exception {
+        return this.jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(this.saveUserStep())
+                .next(this.userLevelUpStep())
+                .listener(new LevelUpJobExecutionListener(userRepository))
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_saveUserStep")
+    public Step saveUserStep() {
+        return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
+                .tasklet(new SaveUserTasklet(dataSource))
+                .build();
+    }
+
+    // manager - 읽은 chunk를 worker로 보내고, 응답의 write count 등을 manager StepExecution에 반영한다.
+    @Bean(JOB_NAME + "_userLevelUpStep")
+    public Step userLevelUpStep() throws Exception {
+        return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+                .<UserTotalAmount, UserTotalAmount>chunk(CHUNK)
+                .reader(itemReader())
+                .writer(chunkMessageChannelItemWriter())
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_userItemReader")
+    @StepScope
+    UserTotalAmountItemReader itemReader() {
+        return new UserTotalAmountItemReader(dataSource, CHUNK, JOB_NAME + "_userItemReader");
+    }
+
+    // StepExecutionListener이기도 해서 step 종료 시 남은 응답을 모두 기다린다.
+    @Bean(JOB_NAME + "_chunkMessageChannelItemWriter")
+    @StepScope
+    ChunkMessageChannelItemWriter<UserTotalAmount> chunkMessageChannelItemWriter() throws MetaDataAccessException {
+        MessagingTemplate messagingTemplate = new MessagingTemplate();
+        messagingTemplate.setDefaultChannel(requests());
+        messagingTemplate.setReceiveTimeout(RECEIVE_TIMEOUT);
+
+        ChunkMessageChannelItemWriter<UserTotalAmount> itemWriter = new ChunkMessageChannelItemWriter<>();
+        itemWriter.setMessagingOperations(messagingTemplate);
+        itemWriter.setReplyChannel(replies());
+        itemWriter.setThrottleLimit(THROTTLE_LIMIT);
+        itemWriter.setMaxWaitTimeouts(MAX_WAIT_TIMEOUTS);
+
+        return itemWriter;
+    }
+
+    @Bean(JOB_NAME + "_requests")
+    QueueChannel requests() throws MetaDataAccessException {
+        return JdbcQueueChannels.queueChannel(dataSource, REQUEST_GROUP);
+    }
+
+    @Bean(JOB_NAME + "_replies")
+    QueueChannel replies() throws MetaDataAccessException {
+        return JdbcQueueChannels.queueChannel(dataSource, REPLY_GROUP);
+    }
+
+    // worker - 요청 큐의 chunk를 processor, writer로 처리하고 결과를 응답 큐로 보낸다.
+    @Bean(JOB_NAME + "_workerFlow")
+    @Profile({RemotePartitionUserConfiguration.WORKER_PROFILE, RemotePartitionUserConfiguration.LOCAL_WORKER_PROFILE})
+    IntegrationFlow workerFlow() throws MetaDataAccessException {
+        return IntegrationFlows.from(requests())
+                // 요청 삭제, chunk 저장, 응답 저장이 같이 커밋되도록 트랜잭션 안에서 요청을 하나씩 꺼낸다.
+                .handle(chunkProcessorChunkHandler(), "handleChunk",
+                        e -> e.poller(Pollers.fixedDelay(POLL_INTERVAL)
+                                .maxMessagesPerPoll(1)
+                                .transactional(transactionManager)))
+                .channel(replies())
+                .get();
+    }
+
+    private ChunkProcessorChunkHandler<UserTotalAmount> chunkProcessorChunkHandler() {
+        SimpleChunkProcessor<UserTotalAmount, UserTotalAmount> chunkProcessor =
+                new SimpleChunkProcessor<>(itemProcessor(), itemWriter());
+
+        // 실패하면 chunk 저장만 savepoint로 되돌리고, handler가 만든 실패 응답은 요청 삭제와 같이 커밋된다.
+        TransactionTemplate savepoint = new TransactionTemplate(transactionManager);
+        savepoint.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+
+        ChunkProcessorChunkHandler<UserTotalAmount> handler = new ChunkProcessorChunkHandler<>();
+        handler.setChunkProcessor((contribution, chunk) -> savepoint.executeWithoutResult(status -> {
+            try {
+                chunkProcessor.process(contribution, chunk);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        return handler;
+    }
+
+    private ItemWriter<UserTotalAmount> itemWriter() {
+        return new UserLevelUpItemWriter<>(dataSource);
+    }
+
+    private ItemProcessor<UserTotalAmount, UserTotalAmount> itemProcessor() {
+        return user -> {
+            // 등급 상향 대상인지 판별
+            if (user.availableLevelUp()) {
+                return user;
+            }
+            return null;
+        };
+    }
+}
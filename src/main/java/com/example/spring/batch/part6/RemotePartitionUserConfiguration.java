@@ -0,0 +1,259 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.BatchTaskExecutors;
+import com.example.spring.batch.part4.JpaKeysetPagingItemReader;
+import com.example.spring.batch.part4.LevelUpJobExecutionListener;
+import com.example.spring.batch.part4.SaveUserTasklet;
+import com.example.spring.batch.part4.User;
+import com.example.spring.batch.part4.UserLevelUpItemWriter;
+import com.example.spring.batch.part4.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.StepLocator;
+import org.springframework.batch.integration.partition.BeanFactoryStepLocator;
+import org.springframework.batch.integration.partition.MessageChannelPartitionHandler;
+import org.springframework.batch.integration.partition.StepExecutionRequest;
+import org.springframework.batch.integration.partition.StepExecutionRequestHandler;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.integration.dsl.IntegrationFlow;
+import org.springframework.integration.dsl.IntegrationFlows;
+import org.springframework.integration.dsl.Pollers;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+
+    Remote Partitioning
+    manager JVM이 UserLevelUpPartitioner로 나눈 파티션(StepExecutionRequest)을 메시지 채널로 보내고
+    여러 worker JVM이 꺼내서 userLevelUpStep을 실행한다.
+
+    별도 브로커 없이 JobRepository와 같은 DB의 INT_CHANNEL_MESSAGE 테이블을 큐로 사용하고,
+    worker는 실행 결과를 JobRepository에 기록하고 manager는 JobRepository를 polling 해서 완료를 확인한다.
+    JVM끼리 DB를 공유해야 하므로 mysql profile로 실행한다.
+
+    worker는 큐에서 메시지를 꺼내는 것과 step 실행을 같은 트랜잭션으로 묶지 않는다.
+    메시지는 delete 한 건이 커밋되는 순간 그 worker의 것이 되고 (먼저 지운 worker만 메시지를 받는다.)
+    step은 그 다음에 트랜잭션 밖에서 실행되어 chunk마다 커밋되므로 manager가 진행 상황을 볼 수 있고,
+    step이 실패하면 FAILED 상태가 그대로 남아서 메시지가 다시 전달되지 않는다.
+    같은 요청이 다시 전달되어도 이미 시작된 StepExecution은 실행하지 않는다.
+    worker가 step 도중에 죽으면 메시지는 이미 지워졌으므로 manager는 PARTITION_TIMEOUT 까지 기다린 뒤 step을 실패시키고,
+    Job을 재시작하면 완료되지 않은 파티션만 다시 큐로 보낸다.
+
+    worker JVM은 main()에서 종료하지 않고 poller가 큐를 계속 처리하며, 종료 신호를 받으면 context와 함께 poller가 멈춘다.
+
+    ex) 한 장비에서 worker 3개 + manager 실행
+    java -jar app.jar --spring.profiles.active=mysql,worker &   (x3)
+    java -jar app.jar --spring.profiles.active=mysql --job.name=remotePartitionUserJob
+
+    ex) H2로 JVM 하나에서 실행
+    java -jar app.jar --spring.profiles.active=local-worker --job.name=remotePartitionUserJob
+
+ */
+@Slf4j
+@Configuration
+public class RemotePartitionUserConfiguration {
+
+    public static final String WORKER_PROFILE = "worker";
+    // H2처럼 다른 JVM이 큐를 볼 수 없을 때 manager JVM 안에서 worker를 같이 실행하는 profile
+    public static final String LOCAL_WORKER_PROFILE = "local-worker";
+
+    private final String JOB_NAME = "remotePartitionUserJob";
+    private final int CHUNK = 1000;
+    // INT_CHANNEL_MESSAGE 테이블에서 파티션 요청을 구분하는 group id
+    private final String REQUEST_GROUP = JOB_NAME + "_requests";
+    // worker가 DB 큐를 확인하는 주기
+    private final long POLL_INTERVAL = 1000;
+    // manager가 모든 파티션의 완료를 기다리는 최대 시간
+    private final long PARTITION_TIMEOUT = 60 * 60 * 1000L;
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final UserRepository userRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+    private final JobExplorer jobExplorer;
+    private final JobRepository jobRepository;
+    private final BatchTaskExecutors taskExecutors;
+
+    public RemotePartitionUserConfiguration(JobBuilderFactory jobBuilderFactory,
+                                            StepBuilderFactory stepBuilderFactory,
+                                            UserRepository userRepository,
+                                            EntityManagerFactory entityManagerFactory,
+                                            DataSource dataSource,
+                                            JobExplorer jobExplorer,
+                                            JobRepository jobRepository,
+                                            BatchTaskExecutors taskExecutors) {
+        this.jobBuilderFactory = jobBuilderFactory;
+        this.stepBuilderFactory = stepBuilderFactory;
+        this.userRepository = userRepository;
+        this.entityManagerFactory = entityManagerFactory;
+        this.dataSource = dataSource;
+        this.jobExplorer = jobExplorer;
+        this.jobRepository = jobRepository;
+        this.taskExecutors = taskExecutors;
+    }
+
+    @Bean(JOB_NAME)
+    public Job userJob() throws Exception {
+        return this.jobBuilderFactory.get(JOB_NAME)
+                .incrementer(new RunIdIncrementer())
+                .start(this.saveUserStep())
+                .next(this.userLevelUpManagerStep())
+                .listener(new LevelUpJobExecutionListener(userRepository))
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_saveUserStep")
+    public Step saveUserStep() {
+        return this.stepBuilderFactory.get(JOB_NAME + "_saveUserStep")
+                .tasklet(new SaveUserTasklet(dataSource))
+                .build();
+    }
+
+    // manager - 파티션을 나눠서 DB 큐로 보내고 JobRepository에서 완료를 기다린다.
+    @Bean(JOB_NAME + "_userLevelUpStep.manager")
+    public Step userLevelUpManagerStep() throws Exception {
+        return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep.manager")
+                .partitioner(JOB_NAME + "_userLevelUpStep", new BalancedUserLevelUpPartitioner(dataSource, CHUNK))
+                // gridSize, chunk 크기를 정한다. worker Thread 수는 알 수 없으므로 CPU 수를 사용한다.
+                .listener(new LevelUpSizingListener(userRepository, null, taskExecutors.connectionBudget(), jobRepository))
+                .partitionHandler(messageChannelPartitionHandler())
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_messageChannelPartitionHandler")
+    MessageChannelPartitionHandler messageChannelPartitionHandler() throws Exception {
+        MessageChannelPartitionHandler handler = new MessageChannelPartitionHandler() {
+            @Override
+            public Collection<StepExecution> handle(StepExecutionSplitter stepSplitter,
+                                                    StepExecution managerStepExecution) throws Exception {
+                // gridSize는 LevelUpSizingListener가 정한 값
+                setGridSize(LevelUpSizingListener.gridSize(managerStepExecution.getJobExecution()));
+                return super.handle(stepSplitter, managerStepExecution);
+            }
+        };
+        handler.setStepName(JOB_NAME + "_userLevelUpStep");
+
+        MessagingTemplate messagingTemplate = new MessagingTemplate();
+        messagingTemplate.setDefaultChannel(requests());
+        handler.setMessagingOperations(messagingTemplate);
+
+        // worker의 응답 메시지 대신 JobRepository를 polling 해서 파티션 완료를 확인
+        handler.setPollRepositoryForResults(true);
+        handler.setJobExplorer(jobExplorer);
+        handler.setPollInterval(POLL_INTERVAL);
+        // worker가 없거나 모두 죽어도 무한히 기다리지 않도록
+        handler.setTimeout(PARTITION_TIMEOUT);
+        handler.afterPropertiesSet();
+
+        return handler;
+    }
+
+    // manager와 worker가 공유하는 DB 기반 큐
+    @Bean(JOB_NAME + "_requests")
+    QueueChannel requests() throws MetaDataAccessException {
+        return JdbcQueueChannels.queueChannel(dataSource, REQUEST_GROUP);
+    }
+
+    // worker - DB 큐에서 파티션 요청을 꺼내 userLevelUpStep을 실행한다.
+    // local-worker profile이면 manager JVM 안에서 worker를 같이 실행한다. (H2 등)
+    @Bean(JOB_NAME + "_workerFlow")
+    @Profile({WORKER_PROFILE, LOCAL_WORKER_PROFILE})
+    IntegrationFlow workerFlow() throws MetaDataAccessException {
+        return IntegrationFlows.from(requests())
+                // 메시지를 지우는 delete만 커밋하고 step은 트랜잭션 없이 실행한다. 한 번에 메시지 하나씩 꺼낸다.
+                .handle(stepExecutionRequestHandler(), "handle",
+                        e -> e.poller(Pollers.fixedDelay(POLL_INTERVAL).maxMessagesPerPoll(1)))
+                // 결과는 JobRepository에 기록되므로 응답 메시지는 버린다.
+                .nullChannel();
+    }
+
+    private StepExecutionRequestHandler stepExecutionRequestHandler() {
+        StepExecutionRequestHandler handler = new StepExecutionRequestHandler() {
+            @Override
+            public StepExecution handle(StepExecutionRequest request) {
+                // 파티션 StepExecution은 STARTING 상태로 만들어지므로 그 외의 상태면 다른 worker가 이미 실행한 요청이다.
+                StepExecution stepExecution = jobExplorer.getStepExecution(
+                        request.getJobExecutionId(), request.getStepExecutionId());
+                if (stepExecution != null && stepExecution.getStatus() != BatchStatus.STARTING) {
+                    log.warn("이미 실행된 파티션 요청 무시 : {}, {}", request, stepExecution.getStatus());
+                    return stepExecution;
+                }
+                return super.handle(request);
+            }
+        };
+        handler.setJobExplorer(jobExplorer);
+        handler.setStepLocator(stepLocator());
+        return handler;
+    }
+
+    @Bean(JOB_NAME + "_stepLocator")
+    StepLocator stepLocator() {
+        return new BeanFactoryStepLocator();
+    }
+
+    // worker가 실행하는 step, BeanFactoryStepLocator가 step 이름으로 찾을 수 있도록 bean 이름과 step 이름이 같아야 한다.
+    @Bean(JOB_NAME + "_userLevelUpStep")
+    public Step userLevelUpStep() {
+        return this.stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+                .<User, User>chunk(new JobChunkSizeCompletionPolicy())
+                .reader(remotePartitionItemReader(null, null, null))
+                .processor(itemProcessor())
+                .writer(itemWriter())
+                .build();
+    }
+
+    private ItemWriter<? super User> itemWriter() {
+        return new UserLevelUpItemWriter<>(dataSource);
+    }
+
+    private ItemProcessor<? super User, ? extends User> itemProcessor() {
+        return user -> {
+            // 등급 상향 대상인지 판별
+            if (user.availableLevelUp()) {
+                return user;
+            }
+            return null;
+        };
+    }
+
+    @Bean(JOB_NAME + "_userItemReader")
+    @StepScope
+    JpaKeysetPagingItemReader<User> remotePartitionItemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
+                                                              @Value("#{stepExecutionContext[maxId]}") Long maxId,
+                                                              @Value("#{jobExecutionContext[chunkSize]}") Integer chunkSize) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("maxId", maxId);
+
+        return new JpaKeysetPagingItemReader<>(
+                entityManagerFactory,
+                "select u from User u where u.id > :lastId and u.id <= :maxId order by u.id",
+                User.class,
+                parameters,
+                User::getId,
+                minId - 1,
+                chunkSize == null ? CHUNK : chunkSize,
+                JOB_NAME + "_userItemReader");
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.spring.batch.part6;
+
+/*
+
+    실행 중인 파티션이 처리할 id 구간
+    Reader가 읽은 위치(fetchedId)보다 뒤쪽의 남은 구간은 다른 Worker가 절반을 가져갈 수 있다.
+
+ */
+public class StealableIdRange {
+
+    private long fetchedId;
+    private long maxId;
+
+    public StealableIdRange(long minId, long maxId) {
+        this.fetchedId = minId - 1;
+        this.maxId = maxId;
+    }
+
+    public synchronized long maxId() {
+        return maxId;
+    }
+
+    /**
+     * Reader가 이 id까지 읽어갔다고 기록하고 현재 maxId를 반환한다.
+     * 조회하는 사이 뒤쪽 구간을 빼앗겼을 수 있으므로 Reader는 반환된 maxId보다 큰 row를 버려야 한다.
+     */
+    public synchronized long fetched(long id) {
+        this.fetchedId = Math.max(this.fetchedId, Math.min(id, this.maxId));
+        return this.maxId;
+    }
+
+    public synchronized long remaining() {
+        return maxId - fetchedId;
+    }
+
+    /**
+     * 남은 구간이 minSplitSize * 2 이상이면 뒤쪽 절반을 떼어내서 {minId, maxId}로 반환하고
+     * 이 구간의 maxId를 줄인다. 나눌 수 없으면 null
+     */
+    public synchronized long[] splitUpperHalf(long minSplitSize) {
+        long remaining = maxId - fetchedId;
+        if (remaining < minSplitSize * 2) {
+            return null;
+        }
+
+        long mid = fetchedId + remaining / 2;
+        long[] stolen = {mid + 1, maxId};
+        this.maxId = mid;
+
+        return stolen;
+    }
+}
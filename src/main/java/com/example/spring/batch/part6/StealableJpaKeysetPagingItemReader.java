@@ -0,0 +1,74 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.part4.JpaKeysetPagingItemReader;
+import org.springframework.batch.item.ExecutionContext;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+
+    WorkStealingPartitionHandler와 함께 사용하는 파티션 Reader
+    페이지마다 StealableIdRange의 현재 maxId로 조회하고, 읽은 위치를 range에 알려준다.
+    queryString은 :lastId, :maxId 파라미터를 사용해야 한다.
+
+ */
+public class StealableJpaKeysetPagingItemReader<T> extends JpaKeysetPagingItemReader<T> {
+
+    private static final String MAX_ID_KEY = "maxId";
+
+    private final StealableIdRange range;
+    private final Function<T, Long> idExtractor;
+
+    public StealableJpaKeysetPagingItemReader(EntityManagerFactory entityManagerFactory,
+                                              String queryString,
+                                              Class<T> type,
+                                              Function<T, Long> idExtractor,
+                                              StealableIdRange range,
+                                              long startAfterId,
+                                              int pageSize,
+                                              String name) {
+        super(entityManagerFactory, queryString, type, new HashMap<>(), idExtractor, startAfterId, pageSize, name);
+        this.range = range;
+        this.idExtractor = idExtractor;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        super.open(executionContext);
+        // 재시작이면 이미 처리한 위치부터 나눌 수 있도록
+        range.fetched(getLastId());
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        // 다른 Worker가 뒤쪽 구간을 가져갔다면 줄어든 maxId로 재시작되도록
+        executionContext.putLong(MAX_ID_KEY, range.maxId());
+    }
+
+    @Override
+    protected Map<String, Object> getParameterValues() {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(MAX_ID_KEY, range.maxId());
+        return parameters;
+    }
+
+    @Override
+    protected List<T> doReadPage(long lastId, int pageSize) {
+        List<T> page = new ArrayList<>(super.doReadPage(lastId, pageSize));
+        if (page.isEmpty()) {
+            return page;
+        }
+
+        // 조회하는 사이에 뒤쪽 구간을 빼앗겼다면 그 구간의 row는 버린다.
+        long maxId = range.fetched(idExtractor.apply(page.get(page.size() - 1)));
+        page.removeIf(item -> idExtractor.apply(item) > maxId);
+
+        return page;
+    }
+}
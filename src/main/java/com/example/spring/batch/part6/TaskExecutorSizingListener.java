@@ -0,0 +1,47 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.BatchTaskExecutors;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+
+/*
+
+    LevelUpSizingListener가 정한 gridSize, chunk 크기로 역할별 TaskExecutor의 Thread 수를 맞추고
+    Job이 끝나면 역할별 대기 시간, 실행 시간, 최대 동시 실행 수를 로그로 남긴다.
+
+    Job에 등록하면 시작 시 metric을 초기화하고 종료 시 로그를 남긴다.
+    파티션 manager step에 LevelUpSizingListener 다음으로 등록하면 saveUserStep 이후 정한 값으로 Thread 수를 맞춘다.
+
+ */
+public class TaskExecutorSizingListener implements JobExecutionListener, StepExecutionListener {
+
+    private final BatchTaskExecutors taskExecutors;
+
+    public TaskExecutorSizingListener(BatchTaskExecutors taskExecutors) {
+        this.taskExecutors = taskExecutors;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution) {
+        taskExecutors.resetMetrics();
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        JobExecution jobExecution = stepExecution.getJobExecution();
+        taskExecutors.resize(LevelUpSizingListener.gridSize(jobExecution), LevelUpSizingListener.chunkSize(jobExecution));
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        return stepExecution.getExitStatus();
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        taskExecutors.logMetrics();
+    }
+}
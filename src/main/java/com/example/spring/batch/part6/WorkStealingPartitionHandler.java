@@ -0,0 +1,245 @@
+package com.example.spring.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/*
+
+    TaskExecutorPartitionHandler는 처음 나눈 파티션을 Thread에 한 번씩만 배정하기 때문에
+    Job 전체 시간이 가장 느린 파티션의 시간이 된다.
+    이 PartitionHandler는 gridSize 만큼의 Worker가 대기 중인 파티션을 꺼내 처리하고,
+    대기 중인 파티션이 없으면 실행 중인 파티션 중 남은 구간이 가장 큰 파티션의 뒤쪽 절반을 가져와서(steal) 처리한다.
+
+    나눈 기록(splits)은 manager StepExecutionContext에 바로 저장해서
+    재시작 시 가져온 파티션도 다시 만들고, 원래 파티션의 maxId도 줄어든 값으로 맞춘다.
+    빼앗긴 파티션에는 StealableIdRange로만 줄어든 maxId를 넘기고, 그 파티션의 ExecutionContext는
+    파티션 자신의 Reader가 다음 chunk 커밋 때 저장한다.
+    Reader는 StealableJpaKeysetPagingItemReader를 사용해야 한다.
+
+    running, ranges는 steal()과 같은 lock(this) 안에서만 바꾼다.
+
+ */
+@Slf4j
+public class WorkStealingPartitionHandler implements PartitionHandler {
+
+    // "가져간 파티션 이름:빼앗긴 파티션 이름:minId:maxId" 를 ';'로 이어서 저장
+    private static final String SPLITS_KEY = "workStealing.splits";
+    private static final String MIN_ID_KEY = "minId";
+    private static final String MAX_ID_KEY = "maxId";
+
+    private final Step step;
+    private final TaskExecutor taskExecutor;
+    private final JobRepository jobRepository;
+
+    // 실행 중인 파티션의 StepExecution id -> 남은 구간
+    private final Map<Long, StealableIdRange> ranges = new ConcurrentHashMap<>();
+    private final Map<Long, StepExecution> running = new ConcurrentHashMap<>();
+
+    public WorkStealingPartitionHandler(Step step, TaskExecutor taskExecutor, JobRepository jobRepository) {
+        this.step = step;
+        this.taskExecutor = taskExecutor;
+        this.jobRepository = jobRepository;
+    }
+
+    // Reader가 자신의 파티션 구간을 찾을 때 사용, 이 Handler 밖에서 실행되면 null
+    public StealableIdRange rangeOf(StepExecution stepExecution) {
+        return ranges.get(stepExecution.getId());
+    }
+
+    @Override
+    public Collection<StepExecution> handle(StepExecutionSplitter stepSplitter,
+                                            StepExecution managerStepExecution) throws Exception {
+        int gridSize = LevelUpSizingListener.gridSize(managerStepExecution.getJobExecution());
+        long minSplitSize = LevelUpSizingListener.chunkSize(managerStepExecution.getJobExecution());
+
+        Set<StepExecution> partitions = stepSplitter.split(managerStepExecution, gridSize);
+        List<StepExecution> restored = restoreSplits(managerStepExecution, partitions);
+
+        Queue<StepExecution> pending = new ConcurrentLinkedQueue<>(partitions);
+        pending.addAll(restored);
+        for (StepExecution partition : pending) {
+            register(partition);
+        }
+
+        Queue<StepExecution> result = new ConcurrentLinkedQueue<>();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < gridSize; i++) {
+            FutureTask<Void> worker = new FutureTask<>(() -> {
+                work(pending, result, managerStepExecution, minSplitSize);
+                return null;
+            });
+            workers.add(worker);
+            taskExecutor.execute(worker);
+        }
+
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+
+        return result;
+    }
+
+    private void work(Queue<StepExecution> pending, Queue<StepExecution> result,
+                      StepExecution managerStepExecution, long minSplitSize) {
+        StepExecution partition = pending.poll();
+        if (partition == null) {
+            partition = steal(managerStepExecution, minSplitSize);
+        }
+
+        while (partition != null) {
+            started(partition);
+            try {
+                step.execute(partition);
+            } catch (Throwable e) {
+                log.error("{} 실행 실패", partition.getStepName(), e);
+                partition.setStatus(BatchStatus.FAILED);
+                partition.addFailureException(e);
+            } finally {
+                finished(partition);
+            }
+            result.add(partition);
+
+            partition = pending.poll();
+            if (partition == null) {
+                partition = steal(managerStepExecution, minSplitSize);
+            }
+        }
+    }
+
+    private synchronized void started(StepExecution partition) {
+        running.put(partition.getId(), partition);
+    }
+
+    private synchronized void finished(StepExecution partition) {
+        running.remove(partition.getId());
+        ranges.remove(partition.getId());
+    }
+
+    // 남은 구간이 가장 큰 실행 중인 파티션의 뒤쪽 절반으로 새 파티션을 만든다.
+    private synchronized StepExecution steal(StepExecution managerStepExecution, long minSplitSize) {
+        StepExecution victim = null;
+        StealableIdRange victimRange = null;
+        long maxRemaining = -1;
+        for (StepExecution candidate : running.values()) {
+            StealableIdRange range = ranges.get(candidate.getId());
+            if (range == null) {
+                continue;
+            }
+            // remaining()은 Reader가 계속 바꾸므로 한 번만 읽는다.
+            long remaining = range.remaining();
+            if (remaining > maxRemaining) {
+                victim = candidate;
+                victimRange = range;
+                maxRemaining = remaining;
+            }
+        }
+        if (victim == null) {
+            return null;
+        }
+
+        long[] stolen = victimRange.splitUpperHalf(minSplitSize);
+        if (stolen == null) {
+            return null;
+        }
+
+        ExecutionContext managerContext = managerStepExecution.getExecutionContext();
+        String splits = managerContext.getString(SPLITS_KEY, "");
+        String partitionName = "steal" + (splits.isEmpty() ? 0 : splits.split(";").length);
+
+        StepExecution partition = newPartition(managerStepExecution, partitionName, stolen[0], stolen[1]);
+        register(partition);
+
+        // 빼앗긴 파티션은 Reader가 다음 chunk 커밋 때 줄어든 maxId를 저장하지만, 그 전에 실패해도 재시작 시 맞출 수 있도록 기록
+        String split = partitionName + ":" + partitionName(victim) + ":" + stolen[0] + ":" + stolen[1];
+        managerContext.putString(SPLITS_KEY, splits.isEmpty() ? split : splits + ";" + split);
+        jobRepository.updateExecutionContext(managerStepExecution);
+
+        log.info("{} 의 id {} ~ {} 구간을 {} 로 분리", victim.getStepName(), stolen[0], stolen[1], partition.getStepName());
+        return partition;
+    }
+
+    // 재시작 시 지난 실행에서 나눈 파티션을 다시 만들고, 빼앗긴 파티션의 maxId를 줄인다.
+    private List<StepExecution> restoreSplits(StepExecution managerStepExecution, Set<StepExecution> partitions) {
+        List<StepExecution> restored = new ArrayList<>();
+        String splits = managerStepExecution.getExecutionContext().getString(SPLITS_KEY, "");
+        if (!StringUtils.hasText(splits)) {
+            return restored;
+        }
+
+        JobInstance jobInstance = managerStepExecution.getJobExecution().getJobInstance();
+        Map<String, StepExecution> byName = new HashMap<>();
+        for (StepExecution partition : partitions) {
+            byName.put(partitionName(partition), partition);
+        }
+
+        for (String split : splits.split(";")) {
+            String[] values = split.split(":");
+            String partitionName = values[0];
+            long minId = Long.parseLong(values[2]);
+            long maxId = Long.parseLong(values[3]);
+
+            StepExecution victim = byName.get(values[1]);
+            if (victim != null) {
+                long victimMaxId = victim.getExecutionContext().getLong(MAX_ID_KEY);
+                victim.getExecutionContext().putLong(MAX_ID_KEY, Math.min(victimMaxId, minId - 1));
+            }
+
+            StepExecution last = jobRepository.getLastStepExecution(jobInstance, stepName(partitionName));
+            if (last != null && last.getStatus() == BatchStatus.COMPLETED) {
+                continue;
+            }
+
+            StepExecution partition = newPartition(managerStepExecution, partitionName, minId, maxId);
+            if (last != null) {
+                partition.setExecutionContext(last.getExecutionContext());
+                jobRepository.updateExecutionContext(partition);
+            }
+            byName.put(partitionName, partition);
+            restored.add(partition);
+        }
+
+        return restored;
+    }
+
+    private StepExecution newPartition(StepExecution managerStepExecution, String partitionName, long minId, long maxId) {
+        StepExecution partition = managerStepExecution.getJobExecution().createStepExecution(stepName(partitionName));
+        partition.getExecutionContext().putLong(MIN_ID_KEY, minId);
+        partition.getExecutionContext().putLong(MAX_ID_KEY, maxId);
+        jobRepository.add(partition);
+        return partition;
+    }
+
+    private synchronized void register(StepExecution partition) {
+        ExecutionContext context = partition.getExecutionContext();
+        ranges.put(partition.getId(), new StealableIdRange(context.getLong(MIN_ID_KEY), context.getLong(MAX_ID_KEY)));
+    }
+
+    private String stepName(String partitionName) {
+        return step.getName() + ":" + partitionName;
+    }
+
+    private String partitionName(StepExecution partition) {
+        return partition.getStepName().substring(step.getName().length() + 1);
+    }
+}
@@ -0,0 +1,7 @@
+-- Orders.amount가 int에서 long이 되면서 ddl-auto=update는 이미 있는 컬럼 타입을 바꾸지 않는다.
+-- 기존 MySQL 스키마는 배치를 실행하기 전에 한 번 직접 실행한다.
+-- user.total_amount, daily_order_stats.amount는 처음부터 long으로 생성되므로 변경하지 않는다.
+--
+-- mysql -u root -p spring_batch < src/main/resources/db/mysql/orders_amount_bigint.sql
+
+alter table orders modify amount bigint not null;
@@ -0,0 +1,7 @@
+-- user.total_amount 컬럼은 ddl-auto=update로 추가되면 기존 user 모두 0으로 채워진다.
+-- 등급 판별은 이 값만 보므로 컬럼을 추가한 뒤, 등급 상향 Job을 실행하기 전에 한 번 직접 실행한다.
+-- 실행 중에 주문이 추가되지 않아야 한다. 운영 중이면 reconcileUserTotalJob으로 구간별로 나눠서 맞춘다.
+--
+-- mysql -u root -p spring_batch < src/main/resources/db/mysql/user_total_amount_backfill.sql
+
+update user u set total_amount = (select coalesce(sum(o.amount), 0) from orders o where o.user_id = u.id);
@@ -0,0 +1,185 @@
+package com.example.spring.batch;
+
+import com.example.spring.batch.part5.OrderStatistics;
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// chunk 트랜잭션이 롤백되거나 step이 재시작되면 커밋된 줄만 파일에 남아야 한다.
+public class ChannelFlatFileItemWriterTest {
+
+    private static final String HEADER = "total_amount,date";
+    private static final LocalDate DATE = LocalDate.of(2020, 11, 1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+
+    @Test
+    public void test_header_and_footer() throws Exception {
+        // given
+        Path path = folder.getRoot().toPath().resolve("statistics.csv");
+        ChannelFlatFileItemWriter<OrderStatistics> writer = writer(path);
+        writer.setFooter("end");
+
+        // when
+        writer.open(new ExecutionContext());
+        writer.write(Arrays.asList(statistic(1_000), statistic(-5_000_000_000L), statistic(Long.MIN_VALUE)));
+        writer.close();
+
+        // then
+        Assertions.assertThat(read(path)).isEqualTo(HEADER + "\n"
+                + "1000,2020-11-01\n"
+                + "-5000000000,2020-11-01\n"
+                + Long.MIN_VALUE + ",2020-11-01\n"
+                + "end");
+    }
+
+    @Test
+    public void test_append_keeps_existing_lines() throws Exception {
+        // given
+        Path path = folder.getRoot().toPath().resolve("statistics.csv");
+        Files.write(path, "1,2020-11-01\n".getBytes(StandardCharsets.UTF_8));
+        ChannelFlatFileItemWriter<OrderStatistics> writer = writer(path);
+        writer.setAppend(true);
+
+        // when - 빈 파일이 아니므로 header를 쓰지 않는다.
+        writer.open(new ExecutionContext());
+        writer.write(Collections.singletonList(statistic(2)));
+        writer.close();
+
+        // then
+        Assertions.assertThat(read(path)).isEqualTo("1,2020-11-01\n2,2020-11-01\n");
+    }
+
+    @Test
+    public void test_rollback_truncates_chunk() throws Exception {
+        // given
+        Path path = folder.getRoot().toPath().resolve("statistics.csv");
+        ChannelFlatFileItemWriter<OrderStatistics> writer = writer(path);
+        writer.open(new ExecutionContext());
+
+        // when
+        writeChunk(writer, Arrays.asList(statistic(1), statistic(2)), false);
+        writeChunk(writer, Arrays.asList(statistic(3), statistic(4)), true);
+        writeChunk(writer, Collections.singletonList(statistic(5)), false);
+        writer.close();
+
+        // then
+        Assertions.assertThat(read(path)).isEqualTo(HEADER + "\n"
+                + "1,2020-11-01\n"
+                + "2,2020-11-01\n"
+                + "5,2020-11-01\n");
+    }
+
+    @Test
+    public void test_encoder_failure_discards_buffered_items() throws Exception {
+        // given - 두 번째 item에서 인코딩이 실패한다.
+        Path path = folder.getRoot().toPath().resolve("statistics.csv");
+        ChannelFlatFileItemWriter<OrderStatistics> writer = new ChannelFlatFileItemWriter<>(path, "statistics",
+                (item, line) -> {
+                    if (item.getAmount() < 0) {
+                        throw new IllegalStateException("인코딩 실패");
+                    }
+                    line.append(item.getAmount()).append(',').append(item.getDate());
+                });
+        writer.setHeader(HEADER);
+        writer.open(new ExecutionContext());
+
+        // when
+        Assertions.assertThatThrownBy(() -> writeChunk(writer, Arrays.asList(statistic(1), statistic(-1)), false))
+                .isInstanceOf(IllegalStateException.class);
+        writeChunk(writer, Collections.singletonList(statistic(2)), false);
+        writer.close();
+
+        // then - 실패한 chunk의 1은 남지 않는다.
+        Assertions.assertThat(read(path)).isEqualTo(HEADER + "\n2,2020-11-01\n");
+    }
+
+    @Test
+    public void test_restart_truncates_to_committed_position() throws Exception {
+        // given - 첫 실행은 chunk 하나를 커밋하고, 다음 chunk를 쓰다가 위치를 저장하지 못하고 끝났다.
+        Path path = folder.getRoot().toPath().resolve("statistics.csv");
+        ExecutionContext executionContext = new ExecutionContext();
+
+        ChannelFlatFileItemWriter<OrderStatistics> writer = writer(path);
+        writer.open(executionContext);
+        writer.write(Collections.singletonList(statistic(1)));
+        writer.update(executionContext);
+        writer.write(Collections.singletonList(statistic(2)));
+        writer.close();
+
+        // when
+        ChannelFlatFileItemWriter<OrderStatistics> restarted = writer(path);
+        restarted.open(executionContext);
+        restarted.write(Collections.singletonList(statistic(3)));
+        restarted.close();
+
+        // then - header는 다시 쓰지 않는다.
+        Assertions.assertThat(read(path)).isEqualTo(HEADER + "\n1,2020-11-01\n3,2020-11-01\n");
+    }
+
+    @Test
+    public void test_non_ascii_across_buffer_boundary() throws Exception {
+        // given - buffer보다 긴 UTF-8 문자열
+        Path path = folder.getRoot().toPath().resolve("statistics.csv");
+        ChannelFlatFileItemWriter<String> writer = new ChannelFlatFileItemWriter<>(path, "names",
+                (item, line) -> line.append(item).append('원'));
+        writer.setBufferSize(32);
+        writer.setHeader("이름");
+
+        // when
+        writer.open(new ExecutionContext());
+        writer.write(Arrays.asList("abc한글", "주문금액합계주문금액합계주문금액합계"));
+        writer.close();
+
+        // then
+        Assertions.assertThat(read(path)).isEqualTo("이름\nabc한글원\n주문금액합계주문금액합계주문금액합계원\n");
+    }
+
+    private void writeChunk(ChannelFlatFileItemWriter<OrderStatistics> writer, List<OrderStatistics> items, boolean rollback) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try {
+                writer.write(items);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            if (rollback) {
+                status.setRollbackOnly();
+            }
+        });
+    }
+
+    private ChannelFlatFileItemWriter<OrderStatistics> writer(Path path) {
+        ChannelFlatFileItemWriter<OrderStatistics> writer = new ChannelFlatFileItemWriter<>(path, "statistics",
+                (item, line) -> line.append(item.getAmount()).append(',').append(item.getDate()));
+        writer.setHeader(HEADER);
+        return writer;
+    }
+
+    private static OrderStatistics statistic(long amount) {
+        return OrderStatistics.builder()
+                .amount(amount)
+                .date(DATE)
+                .build();
+    }
+
+    private static String read(Path path) throws Exception {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.spring.batch;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// 자원이 충돌하는 step은 겹쳐서 실행되지 않고, 충돌하지 않는 step은 같이 실행되어야 한다.
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = TestConfiguration.class)
+public class DagStepTest {
+
+    private static final String TABLE = "table:user";
+    private static final String FILE = "file:statistics.csv";
+    private static final Work NOTHING = () -> {
+    };
+
+    @Autowired
+    private JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    private StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    // step 이름 -> {시작, 종료} System.nanoTime()
+    private final Map<String, long[]> intervals = new ConcurrentHashMap<>();
+    private final List<String> started = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void test_conflicting_steps_do_not_overlap() throws Exception {
+        // given - writer가 실행 중일 때 같은 자원을 쓰지 않는 step이 시작되어야 writer가 끝난다.
+        CountDownLatch independentStarted = new CountDownLatch(1);
+        boolean[] ranInParallel = new boolean[1];
+
+        DagStep dagStep = DagStep.builder("conflictDagStep", jobRepository)
+                .taskExecutor(new SimpleAsyncTaskExecutor("dag-test-"))
+                .step(step("writeTable", () -> ranInParallel[0] = independentStarted.await(10, TimeUnit.SECONDS)))
+                .writes(TABLE)
+                .step(step("readTable1", () -> Thread.sleep(50))).reads(TABLE)
+                .step(step("readTable2", () -> Thread.sleep(50))).reads(TABLE)
+                .step(step("rewriteTable", () -> Thread.sleep(10))).reads(TABLE).writes(TABLE)
+                .step(step("writeFile", independentStarted::countDown)).writes(FILE)
+                .build();
+
+        // when
+        JobExecution jobExecution = launch("conflictDagJob", dagStep);
+
+        // then
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(ranInParallel[0]).isTrue();
+
+        // 쓴 자원을 읽는 step은 쓰기가 끝난 뒤에, 읽은 자원을 쓰는 step은 읽기가 모두 끝난 뒤에 실행된다.
+        assertBefore("writeTable", "readTable1");
+        assertBefore("writeTable", "readTable2");
+        assertBefore("readTable1", "rewriteTable");
+        assertBefore("readTable2", "rewriteTable");
+        // 읽기끼리는 충돌하지 않는다.
+        assertOverlap("readTable1", "readTable2");
+    }
+
+    @Test
+    public void test_failed_step_fails_dag_step() throws Exception {
+        // given
+        DagStep dagStep = DagStep.builder("failDagStep", jobRepository)
+                .taskExecutor(new SimpleAsyncTaskExecutor("dag-test-"))
+                .step(step("failWrite", () -> {
+                    throw new IllegalStateException("쓰기 실패");
+                }))
+                .writes(TABLE)
+                .step(step("readAfterFail", NOTHING)).reads(TABLE)
+                .build();
+
+        // when
+        JobExecution jobExecution = launch("failDagJob", dagStep);
+
+        // then - 실패한 step에 의존하는 step은 시작하지 않는다.
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.FAILED);
+        Assertions.assertThat(status(jobExecution, "failDagStep")).isEqualTo(BatchStatus.FAILED);
+        Assertions.assertThat(status(jobExecution, "failWrite")).isEqualTo(BatchStatus.FAILED);
+        Assertions.assertThat(started).containsExactly("failWrite");
+    }
+
+    @Test
+    public void test_critical_path_starts_first() throws Exception {
+        // given - 이전 실행에서 slow가 가장 오래 걸렸다.
+        JobExecution history = launch("criticalPathDagJob", criticalPathDagStep(new SimpleAsyncTaskExecutor("dag-test-")));
+        Assertions.assertThat(history.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        started.clear();
+
+        // when - 한 Thread에서 실행하면 시작 순서가 우선순위 순서가 된다.
+        JobExecution jobExecution = launch("criticalPathDagJob", criticalPathDagStep(new SyncTaskExecutor()));
+
+        // then - slow(200ms) > head(뒤에 50ms인 tail이 남음) > single 순서로 시작하고, tail은 head가 끝난 뒤에 시작한다.
+        // 이전 실행 기록이 없으면 head(2) > single(1) = slow(1) 이므로 slow가 먼저 시작하지 않는다.
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(started).containsExactly("slow", "head", "single", "tail");
+    }
+
+    private DagStep criticalPathDagStep(TaskExecutor taskExecutor) {
+        return DagStep.builder("criticalPathDagStep", jobRepository)
+                .taskExecutor(taskExecutor)
+                .jobExplorer(jobExplorer)
+                .step(step("single", NOTHING)).writes("table:single")
+                .step(step("head", NOTHING)).writes(TABLE)
+                .step(step("tail", () -> Thread.sleep(50))).reads(TABLE)
+                .step(step("slow", () -> Thread.sleep(200))).writes(FILE)
+                .build();
+    }
+
+    private JobExecution launch(String jobName, DagStep dagStep) throws Exception {
+        return jobLauncher.run(jobBuilderFactory.get(jobName).start(dagStep).build(),
+                new JobParametersBuilder()
+                        .addLong("time", System.nanoTime())
+                        .toJobParameters());
+    }
+
+    private Step step(String name, Work work) {
+        return stepBuilderFactory.get(name)
+                .tasklet((contribution, chunkContext) -> {
+                    started.add(name);
+                    long start = System.nanoTime();
+                    try {
+                        work.run();
+                    } finally {
+                        intervals.put(name, new long[]{start, System.nanoTime()});
+                    }
+                    return RepeatStatus.FINISHED;
+                })
+                .build();
+    }
+
+    private void assertBefore(String earlier, String later) {
+        Assertions.assertThat(intervals.get(earlier)[1])
+                .as("%s는 %s가 끝난 뒤에 시작해야 한다.", later, earlier)
+                .isLessThanOrEqualTo(intervals.get(later)[0]);
+    }
+
+    private void assertOverlap(String first, String second) {
+        long[] a = intervals.get(first);
+        long[] b = intervals.get(second);
+        Assertions.assertThat(a[0] < b[1] && b[0] < a[1])
+                .as("%s와 %s는 같이 실행되어야 한다.", first, second)
+                .isTrue();
+    }
+
+    private static BatchStatus status(JobExecution jobExecution, String stepName) {
+        return jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals(stepName))
+                .map(StepExecution::getStatus)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private interface Work {
+        void run() throws Exception;
+    }
+}
@@ -15,4 +15,10 @@ public class TestConfiguration {
     public JobLauncherTestUtils jobLauncherTestUtils(){
         return new JobLauncherTestUtils();
     }
+
+    // Hikari 기본 커넥션 수(10)에서 JobRepository 갱신용 1개를 뺀 값
+    @Bean
+    public BatchTaskExecutors batchTaskExecutors() {
+        return new BatchTaskExecutors(false, 9);
+    }
 }
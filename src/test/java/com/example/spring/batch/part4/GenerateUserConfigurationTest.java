@@ -0,0 +1,48 @@
+package com.example.spring.batch.part4;
+
+import com.example.spring.batch.TestConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {GenerateUserConfiguration.class, TestConfiguration.class})
+public class GenerateUserConfigurationTest {
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Test
+    public void test() throws Exception {
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("users", "1000")
+                .addString("seed", "42")
+                .addString("slice", "300")
+                .toJobParameters();
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+
+        // 같은 seed로 만든 generator의 주문 수와 적재된 건수가 같아야 한다.
+        UserOrderGenerator generator = new UserOrderGenerator(42, UserOrderGenerator.ZIPF, 100, LocalDate.of(2020, 11, 1), 61);
+        int expectedOrders = 0;
+        for (long i = 0; i < 1000; i++) {
+            expectedOrders += generator.orderCount(generator.random(i));
+        }
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(jobExecution.getStepExecutions().iterator().next().getWriteCount())
+                .isEqualTo(1000 + expectedOrders);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.spring.batch.part4;
+
+import com.example.spring.batch.TestConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+// from, to로 실행하면 월마다 파티션 하나가 orders의 일별 합계 파일 하나를 써야 한다.
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {UserConfiguration.class, TestConfiguration.class})
+public class MonthlyOrderStatisticsStepTest {
+
+    private static final String HEADER = "total_amount,date";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.update("delete from orders");
+        jdbcTemplate.update("delete from user");
+        jdbcTemplate.update("delete from daily_order_stats");
+        jdbcTemplate.update("delete from job_watermark");
+    }
+
+    @Test
+    public void test_from_to() throws Exception {
+        // given - SaveUserTasklet의 주문은 2020-11, 2020-12에만 있다.
+        YearMonth from = YearMonth.of(2020, 10);
+        YearMonth to = YearMonth.of(2020, 12);
+        String path = folder.getRoot().getPath() + "/";
+
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString("from", from.toString())
+                .addString("to", to.toString())
+                .addString("path", path)
+                .addLong("time", System.nanoTime())
+                .toJobParameters());
+
+        // then
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            Assertions.assertThat(readFile(path, month))
+                    .as(month.toString())
+                    .isEqualTo(expectedLines(month));
+        }
+        Assertions.assertThat(readFile(path, from)).containsExactly(HEADER);
+    }
+
+    private List<String> readFile(String path, YearMonth month) throws Exception {
+        Path file = folder.getRoot().toPath()
+                .resolve(month.getYear() + "년_" + month.getMonthValue() + "월_일별_주문_금액.csv");
+        Assertions.assertThat(file).as(path).exists();
+        return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+
+    // orders를 직접 group by 한 결과
+    private List<String> expectedLines(YearMonth month) {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        jdbcTemplate.query("select sum(amount), created_date from orders"
+                        + " where created_date >= ? and created_date <= ?"
+                        + " group by created_date order by created_date",
+                rs -> {
+                    lines.add(rs.getLong(1) + "," + rs.getDate(2).toLocalDate());
+                },
+                Date.valueOf(month.atDay(1)), Date.valueOf(month.atEndOfMonth()));
+        return lines;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.spring.batch.part4;
+
+import com.example.spring.batch.TestConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// csv의 주문이 orders에 추가되고 user.total_amount가 orders 합계와 같아야 한다.
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {OrderIngestConfiguration.class, TestConfiguration.class})
+public class OrderIngestConfigurationTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.update("delete from orders");
+        jdbcTemplate.update("delete from user");
+        jdbcTemplate.update("delete from daily_order_stats");
+    }
+
+    @Test
+    public void test() throws Exception {
+        // given
+        long first = userRepository.save(User.builder().username("first").build()).getId();
+        long second = userRepository.save(User.builder().username("second").build()).getId();
+
+        Path input = folder.getRoot().toPath().resolve("orders.csv");
+        Files.write(input, ("user_id,item_name,amount,created_date\n"
+                + first + ",item1,100000,2020-11-01\n"
+                + second + ",item2,50000,2020-11-01\n"
+                + first + ",item3,150000,2020-11-02\n").getBytes(StandardCharsets.UTF_8));
+
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(new JobParametersBuilder()
+                .addString("input", input.toString())
+                .toJobParameters());
+
+        // then
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(jdbcTemplate.queryForObject("select count(*) from orders", Integer.class)).isEqualTo(3);
+        Assertions.assertThat(totalAmount(first)).isEqualTo(250_000);
+        Assertions.assertThat(totalAmount(second)).isEqualTo(50_000);
+        Assertions.assertThat(jdbcTemplate.queryForObject("select sum(amount) from daily_order_stats", Long.class))
+                .isEqualTo(300_000);
+    }
+
+    private long totalAmount(long userId) {
+        return jdbcTemplate.queryForObject("select total_amount from user where id = ?", Long.class, userId);
+    }
+}
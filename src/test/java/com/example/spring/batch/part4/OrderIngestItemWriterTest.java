@@ -0,0 +1,137 @@
+package com.example.spring.batch.part4;
+
+import com.example.spring.batch.TestConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.item.support.ListItemReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+// chunk 트랜잭션 안에서 orders, user.total_amount, daily_order_stats가 같이 커밋되고 같이 롤백되어야 한다.
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = TestConfiguration.class)
+public class OrderIngestItemWriterTest {
+
+    private static final int CHUNK = 2;
+    private static final LocalDate ORDER_DATE = LocalDate.of(2020, 11, 1);
+
+    @Autowired
+    private JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    private StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.update("delete from orders");
+        jdbcTemplate.update("delete from user");
+        jdbcTemplate.update("delete from daily_order_stats");
+    }
+
+    @Test
+    public void test_ingest() throws Exception {
+        // given
+        long first = saveUser("first");
+        long second = saveUser("second");
+
+        // when
+        JobExecution jobExecution = ingest(Arrays.asList(
+                new UserOrder(first, "item", 1_000, ORDER_DATE),
+                new UserOrder(second, "item", 2_000, ORDER_DATE),
+                new UserOrder(first, "item", 3_000, ORDER_DATE)));
+
+        // then
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(orderAmount(first)).isEqualTo(4_000);
+        Assertions.assertThat(orderAmount(second)).isEqualTo(2_000);
+        Assertions.assertThat(totalAmount(first)).isEqualTo(4_000);
+        Assertions.assertThat(totalAmount(second)).isEqualTo(2_000);
+        Assertions.assertThat(dailyAmount()).isEqualTo(6_000);
+    }
+
+    @Test
+    public void test_unknown_user_rolls_back_chunk() throws Exception {
+        // given
+        long user = saveUser("user");
+        long unknown = user + 1_000;
+
+        // when - 두 번째 chunk에 없는 user의 주문이 섞여 있다.
+        JobExecution jobExecution = ingest(Arrays.asList(
+                new UserOrder(user, "item", 1_000, ORDER_DATE),
+                new UserOrder(user, "item", 2_000, ORDER_DATE),
+                new UserOrder(user, "item", 3_000, ORDER_DATE),
+                new UserOrder(unknown, "item", 4_000, ORDER_DATE)));
+
+        // then - 첫 번째 chunk만 남는다.
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.FAILED);
+        Assertions.assertThat(orderCount(user)).isEqualTo(2);
+        Assertions.assertThat(orderAmount(user)).isEqualTo(3_000);
+        Assertions.assertThat(orderCount(unknown)).isZero();
+        Assertions.assertThat(totalAmount(user)).isEqualTo(3_000);
+        Assertions.assertThat(dailyAmount()).isEqualTo(3_000);
+    }
+
+    private JobExecution ingest(List<UserOrder> orders) throws Exception {
+        Job job = jobBuilderFactory.get("orderIngestTestJob")
+                .start(stepBuilderFactory.get("orderIngestTestStep")
+                        .<UserOrder, UserOrder>chunk(CHUNK)
+                        .reader(new ListItemReader<>(orders))
+                        .writer(new OrderIngestItemWriter(dataSource))
+                        .build())
+                .build();
+
+        return jobLauncher.run(job, new JobParametersBuilder()
+                .addLong("time", System.nanoTime())
+                .toJobParameters());
+    }
+
+    private long saveUser(String username) {
+        return userRepository.save(User.builder().username(username).build()).getId();
+    }
+
+    private long totalAmount(long userId) {
+        return jdbcTemplate.queryForObject("select total_amount from user where id = ?", Long.class, userId);
+    }
+
+    private long orderAmount(long userId) {
+        return jdbcTemplate.queryForObject("select coalesce(sum(amount), 0) from orders where user_id = ?", Long.class, userId);
+    }
+
+    private int orderCount(long userId) {
+        return jdbcTemplate.queryForObject("select count(*) from orders where user_id = ?", Integer.class, userId);
+    }
+
+    private long dailyAmount() {
+        return jdbcTemplate.queryForObject("select coalesce(sum(amount), 0) from daily_order_stats where order_date = ?",
+                Long.class, Date.valueOf(ORDER_DATE));
+    }
+}
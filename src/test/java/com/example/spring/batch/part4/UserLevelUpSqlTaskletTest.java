@@ -0,0 +1,171 @@
+package com.example.spring.batch.part4;
+
+import com.example.spring.batch.TestConfiguration;
+import com.example.spring.batch.part5.Orders;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = {UserConfiguration.class, TestConfiguration.class})
+public class UserLevelUpSqlTaskletTest {
+
+    private static final String STEP_NAME = "userJob_userLevelUpStep";
+
+    // 등급 경계값 주변의 주문 금액 조합
+    private static final List<List<Integer>> AMOUNTS = Arrays.asList(
+            Arrays.asList(),
+            Arrays.asList(1_000),
+            Arrays.asList(199_999),
+            Arrays.asList(200_000),
+            Arrays.asList(100_000, 100_000),
+            Arrays.asList(299_999),
+            Arrays.asList(300_000),
+            Arrays.asList(499_999),
+            Arrays.asList(250_000, 250_000),
+            Arrays.asList(600_000));
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.update("delete from orders");
+        jdbcTemplate.update("delete from user");
+    }
+
+    @Test
+    public void test_sql_mode_equals_jvm_mode() throws Exception {
+        // given
+        Map<Long, String> initialLevels = saveUsers();
+
+        // when
+        JobExecution jvmExecution = launchLevelUpStep("jvm");
+        Map<Long, String> jvmLevels = findLevels();
+
+        resetLevels(initialLevels);
+
+        JobExecution sqlExecution = launchLevelUpStep("sql");
+        Map<Long, String> sqlLevels = findLevels();
+
+        // then
+        Assertions.assertThat(sqlLevels).isEqualTo(jvmLevels);
+        Assertions.assertThat(writeCount(sqlExecution))
+                .isEqualTo(writeCount(jvmExecution))
+                .isGreaterThan(0);
+        Assertions.assertThat(readCount(sqlExecution))
+                .isEqualTo(readCount(jvmExecution))
+                .isEqualTo(initialLevels.size());
+    }
+
+    @Test
+    public void test_columnar_mode_equals_jvm_mode() throws Exception {
+        // given
+        Map<Long, String> initialLevels = saveUsers();
+
+        // when
+        JobExecution jvmExecution = launchLevelUpStep("jvm");
+        Map<Long, String> jvmLevels = findLevels();
+
+        resetLevels(initialLevels);
+
+        JobExecution columnarExecution = launchLevelUpStep("columnar");
+        Map<Long, String> columnarLevels = findLevels();
+
+        // then
+        Assertions.assertThat(columnarLevels).isEqualTo(jvmLevels);
+        Assertions.assertThat(writeCount(columnarExecution))
+                .isEqualTo(writeCount(jvmExecution))
+                .isGreaterThan(0);
+    }
+
+    // 모든 등급 x 모든 금액 조합으로 user를 저장하고 초기 등급을 반환
+    private Map<Long, String> saveUsers() {
+        List<User> users = new ArrayList<>();
+        for (User.Level level : User.Level.values()) {
+            for (List<Integer> amounts : AMOUNTS) {
+                users.add(User.builder()
+                        .username(level.name())
+                        .orders(amounts.stream()
+                                .map(amount -> Orders.builder()
+                                        .amount(amount)
+                                        .createdDate(LocalDate.of(2020, 11, 1))
+                                        .itemName("item")
+                                        .build())
+                                .collect(Collectors.toList()))
+                        .build());
+            }
+        }
+        userRepository.saveAll(users);
+
+        Map<Long, String> initialLevels = new HashMap<>();
+        for (User user : users) {
+            initialLevels.put(user.getId(), user.getUsername());
+        }
+        resetLevels(initialLevels);
+
+        return initialLevels;
+    }
+
+    private void resetLevels(Map<Long, String> levels) {
+        levels.forEach((id, level) ->
+                jdbcTemplate.update("update user set level = ?, updated_date = null where id = ?", level, id));
+    }
+
+    private Map<Long, String> findLevels() {
+        Map<Long, String> levels = new HashMap<>();
+        jdbcTemplate.query("select id, level from user", rs -> {
+            levels.put(rs.getLong(1), rs.getString(2));
+        });
+        return levels;
+    }
+
+    private JobExecution launchLevelUpStep(String mode) {
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("mode", mode)
+                .addLong("time", System.nanoTime())
+                .toJobParameters();
+
+        return jobLauncherTestUtils.launchStep(STEP_NAME, jobParameters);
+    }
+
+    private int writeCount(JobExecution jobExecution) {
+        return jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals(STEP_NAME))
+                .mapToInt(StepExecution::getWriteCount)
+                .sum();
+    }
+
+    private int readCount(JobExecution jobExecution) {
+        return jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals(STEP_NAME))
+                .mapToInt(StepExecution::getReadCount)
+                .sum();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.spring.batch.part5;
+
+import com.example.spring.batch.TestConfiguration;
+import org.assertj.core.api.Assertions;
+import org.assertj.core.groups.Tuple;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+// 일별 버킷 합산 결과가 같은 기간의 group by 결과와 같아야 한다. (월 경계, 기간 밖의 주문 포함)
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = TestConfiguration.class)
+public class DayBucketOrderAggregatorTest {
+
+    private static final long USER_ID = 1;
+    private static final YearMonth FROM = YearMonth.of(2020, 10);
+    private static final YearMonth TO = YearMonth.of(2020, 11);
+    // 2020-09-25 ~ 2020-12-08, 기간 앞뒤와 10/31 -> 11/01 경계를 모두 지난다.
+    private static final LocalDate FIRST_DATE = LocalDate.of(2020, 9, 25);
+    private static final int DAYS = 75;
+    private static final long ORDERS = 3_000;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        jdbcTemplate.update("insert into user (id, username, level, total_amount) values (?, ?, ?, ?)",
+                USER_ID, "user", "NORMAL", 0L);
+
+        List<Object[]> orders = new ArrayList<>();
+        for (long id = 1; id <= ORDERS; id++) {
+            // int 범위를 넘는 금액도 섞는다.
+            long amount = id % 100 == 0 ? 3_000_000_000L : id * 7 % 10_000;
+            orders.add(order(id, amount, FIRST_DATE.plusDays(id % DAYS)));
+        }
+        // id는 크지만 기간 밖인 주문
+        for (long id = 100_000; id < 100_010; id++) {
+            orders.add(order(id, 1_000, LocalDate.of(2021, 1, 1)));
+        }
+        jdbcTemplate.batchUpdate("insert into orders (id, item_name, amount, created_date, user_id) values (?, ?, ?, ?, ?)",
+                orders);
+    }
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.update("delete from orders");
+        jdbcTemplate.update("delete from user");
+    }
+
+    @Test
+    public void test_aggregate_equals_group_by() {
+        // given
+        DayBucketOrderAggregator aggregator = new DayBucketOrderAggregator(dataSource, FROM, TO);
+        List<Tuple> expected = groupBy();
+
+        // when
+        List<OrderStatistics> single = aggregator.aggregate();
+        List<OrderStatistics> parallel = aggregator.aggregate(new SimpleAsyncTaskExecutor("day-bucket-test-"), 3);
+
+        // then
+        Assertions.assertThat(expected).hasSize(FROM.lengthOfMonth() + TO.lengthOfMonth());
+        Assertions.assertThat(single)
+                .extracting(OrderStatistics::getDate, OrderStatistics::getAmount)
+                .containsExactlyElementsOf(expected);
+        Assertions.assertThat(parallel)
+                .extracting(OrderStatistics::getDate, OrderStatistics::getAmount)
+                .containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    public void test_no_orders_in_period() {
+        // given - 주문은 2020-09 ~ 2021-01에만 있다.
+        DayBucketOrderAggregator aggregator = new DayBucketOrderAggregator(dataSource, YearMonth.of(2021, 3), YearMonth.of(2021, 4));
+
+        // when, then
+        Assertions.assertThat(aggregator.aggregate()).isEmpty();
+        Assertions.assertThat(aggregator.aggregate(new SimpleAsyncTaskExecutor("day-bucket-test-"), 3)).isEmpty();
+    }
+
+    private List<Tuple> groupBy() {
+        return jdbcTemplate.query("select created_date, sum(amount) from orders"
+                        + " where created_date >= ? and created_date <= ?"
+                        + " group by created_date order by created_date",
+                (rs, rowNum) -> Assertions.tuple(rs.getDate(1).toLocalDate(), rs.getLong(2)),
+                FROM.atDay(1), TO.atEndOfMonth());
+    }
+
+    private static Object[] order(long id, long amount, LocalDate createdDate) {
+        return new Object[]{id, "item" + id, amount, Date.valueOf(createdDate), USER_ID};
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.spring.batch.part5;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// 월별로 나눠 ExecutionContext에 문자열로 저장한 일별 합계를 worker가 그대로 되살려야 한다.
+public class MonthlyOrderStatisticsPartitionerTest {
+
+    private static final List<OrderStatistics> STATISTICS = Arrays.asList(
+            statistic(LocalDate.of(2020, 11, 1), 1_000),
+            statistic(LocalDate.of(2020, 11, 30), 5_000_000_000L),
+            statistic(LocalDate.of(2020, 12, 31), 0));
+
+    @Test
+    public void test_amounts_round_trip() {
+        // given
+        MonthlyOrderStatisticsPartitioner partitioner = new MonthlyOrderStatisticsPartitioner(
+                YearMonth.of(2020, 10), YearMonth.of(2020, 12), () -> STATISTICS);
+
+        // when
+        Map<String, ExecutionContext> partitions = partitioner.partition(1);
+
+        // then - 주문이 없는 달도 빈 파티션으로 만든다.
+        Assertions.assertThat(partitions.keySet())
+                .containsExactlyInAnyOrderElementsOf(partitioner.getPartitionNames(1))
+                .hasSize(3);
+
+        Assertions.assertThat(statistics(partitions, "2020-10")).isEmpty();
+        Assertions.assertThat(statistics(partitions, "2020-11"))
+                .extracting(OrderStatistics::getDate, OrderStatistics::getAmount)
+                .containsExactly(
+                        Assertions.tuple(LocalDate.of(2020, 11, 1), 1_000L),
+                        Assertions.tuple(LocalDate.of(2020, 11, 30), 5_000_000_000L));
+        Assertions.assertThat(statistics(partitions, "2020-12"))
+                .extracting(OrderStatistics::getDate, OrderStatistics::getAmount)
+                .containsExactly(Assertions.tuple(LocalDate.of(2020, 12, 31), 0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_to_before_from() {
+        new MonthlyOrderStatisticsPartitioner(YearMonth.of(2020, 12), YearMonth.of(2020, 11), () -> STATISTICS);
+    }
+
+    private static List<OrderStatistics> statistics(Map<String, ExecutionContext> partitions, String month) {
+        ExecutionContext executionContext = partitions.values().stream()
+                .filter(x -> month.equals(x.getString(MonthlyOrderStatisticsPartitioner.MONTH_KEY)))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("파티션이 없습니다 : " + month));
+        return MonthlyOrderStatisticsPartitioner.statistics(month,
+                executionContext.getString(MonthlyOrderStatisticsPartitioner.AMOUNTS_KEY));
+    }
+
+    private static OrderStatistics statistic(LocalDate date, long amount) {
+        return OrderStatistics.builder()
+                .date(date)
+                .amount(amount)
+                .build();
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.TestConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+// id 중간이 비어 있고 앞쪽 user에 주문이 몰려 있어도 파티션마다 (user + 주문) 양이 비슷해야 한다.
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = TestConfiguration.class)
+public class BalancedUserLevelUpPartitionerTest {
+
+    private static final int GRID_SIZE = 4;
+    private static final int MIN_BLOCK_SIZE = 100;
+
+    // 1 ~ 20,000 중 5,001 ~ 15,000은 삭제된 id
+    private static final long MAX_ID = 20_000;
+    private static final long DELETED_FROM = 5_001;
+    private static final long DELETED_TO = 15_000;
+
+    // 1 ~ 100번 user는 주문이 40건, 나머지는 짝수 id만 1건
+    private static final long HEAVY_USERS = 100;
+    private static final int HEAVY_ORDERS = 40;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.update("delete from orders");
+        jdbcTemplate.update("delete from user");
+    }
+
+    @Test
+    public void test_skewed_users_and_orders() {
+        // given
+        saveSkewedUsers();
+
+        // when
+        Map<String, ExecutionContext> partitions =
+                new BalancedUserLevelUpPartitioner(dataSource, MIN_BLOCK_SIZE).partition(GRID_SIZE);
+
+        // then - 구간이 빈틈 없이 이어진다.
+        Assertions.assertThat(partitions).hasSize(GRID_SIZE);
+        List<ExecutionContext> ranges = new ArrayList<>(partitions.values());
+        ranges.sort(Comparator.comparingLong(x -> x.getLong("minId")));
+
+        Assertions.assertThat(ranges.get(0).getLong("minId")).isEqualTo(1);
+        Assertions.assertThat(ranges.get(GRID_SIZE - 1).getLong("maxId")).isEqualTo(MAX_ID);
+        for (int i = 1; i < GRID_SIZE; i++) {
+            Assertions.assertThat(ranges.get(i).getLong("minId")).isEqualTo(ranges.get(i - 1).getLong("maxId") + 1);
+        }
+
+        // then - user 수는 정확하고, 실제 (user + 주문) 양이 평균의 ±30% 안에 든다.
+        long totalWeight = count("select count(*) from user") + count("select count(*) from orders");
+        double averageWeight = (double) totalWeight / GRID_SIZE;
+
+        for (ExecutionContext range : ranges) {
+            long minId = range.getLong("minId");
+            long maxId = range.getLong("maxId");
+            long users = count("select count(*) from user where id between ? and ?", minId, maxId);
+            long orders = count("select count(*) from orders where user_id between ? and ?", minId, maxId);
+
+            Assertions.assertThat(range.getLong("expectedUsers")).isEqualTo(users);
+            Assertions.assertThat((double) (users + orders)).isBetween(averageWeight * 0.7, averageWeight * 1.3);
+        }
+    }
+
+    @Test
+    public void test_empty_user() {
+        Assertions.assertThat(new BalancedUserLevelUpPartitioner(dataSource, MIN_BLOCK_SIZE).partition(GRID_SIZE))
+                .isEmpty();
+    }
+
+    private void saveSkewedUsers() {
+        List<Object[]> users = new ArrayList<>();
+        List<Object[]> orders = new ArrayList<>();
+        Date createdDate = Date.valueOf(LocalDate.of(2020, 11, 1));
+
+        for (long id = 1; id <= MAX_ID; id++) {
+            if (id >= DELETED_FROM && id <= DELETED_TO) {
+                continue;
+            }
+            users.add(new Object[]{id, "user" + id, "NORMAL", 0L});
+
+            int orderCount = id <= HEAVY_USERS ? HEAVY_ORDERS : (id % 2 == 0 ? 1 : 0);
+            for (int i = 0; i < orderCount; i++) {
+                orders.add(new Object[]{"item", 1_000, createdDate, id});
+            }
+        }
+
+        jdbcTemplate.batchUpdate("insert into user (id, username, level, total_amount) values (?, ?, ?, ?)", users);
+        jdbcTemplate.batchUpdate("insert into orders (item_name, amount, created_date, user_id) values (?, ?, ?, ?)", orders);
+    }
+
+    private long count(String sql, Object... args) {
+        return jdbcTemplate.queryForObject(sql, Long.class, args);
+    }
+}
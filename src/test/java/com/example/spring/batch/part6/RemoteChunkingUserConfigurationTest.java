@@ -0,0 +1,49 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.TestConfiguration;
+import com.example.spring.batch.part4.UserRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+
+// H2에서는 local-worker profile로 manager JVM 안의 worker가 DB 큐를 통해 chunk를 처리한다.
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ActiveProfiles(RemotePartitionUserConfiguration.LOCAL_WORKER_PROFILE)
+@ContextConfiguration(classes = {RemoteChunkingUserConfiguration.class, TestConfiguration.class})
+public class RemoteChunkingUserConfigurationTest {
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    public void test() throws Exception {
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob();
+
+        int size = userRepository.findALlByUpdatedDate(LocalDate.now()).size();
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        // worker의 write count가 응답으로 manager step에 반영된다.
+        Assertions.assertThat(jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals("remoteChunkingUserJob_userLevelUpStep"))
+                .mapToInt(StepExecution::getWriteCount)
+                .sum())
+                .isEqualTo(size)
+                // SaveUserTasklet이 저장한 4 x 10,000명 중 주문 금액 1,000원인 10,000명을 뺀 나머지가 등급 상향 대상
+                .isEqualTo(30_000);
+    }
+}
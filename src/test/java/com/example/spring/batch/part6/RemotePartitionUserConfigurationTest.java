@@ -0,0 +1,68 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.TestConfiguration;
+import com.example.spring.batch.part4.UserRepository;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// H2에서는 local-worker profile로 manager JVM 안의 worker가 DB 큐에서 파티션 요청을 꺼내 실행한다.
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ActiveProfiles(RemotePartitionUserConfiguration.LOCAL_WORKER_PROFILE)
+@ContextConfiguration(classes = {RemotePartitionUserConfiguration.class, TestConfiguration.class})
+public class RemotePartitionUserConfigurationTest {
+
+    private static final String STEP_NAME = "remotePartitionUserJob_userLevelUpStep";
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    public void test() throws Exception {
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob();
+
+        int size = userRepository.findALlByUpdatedDate(LocalDate.now()).size();
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        // worker가 실행한 파티션은 JobRepository에서 다시 읽어야 최종 상태가 보인다.
+        List<StepExecution> partitions = jobExplorer.getJobExecution(jobExecution.getId())
+                .getStepExecutions().stream()
+                .filter(x -> x.getStepName().startsWith(STEP_NAME + ":"))
+                .collect(Collectors.toList());
+        Assertions.assertThat(partitions).isNotEmpty();
+        Assertions.assertThat(partitions).allMatch(x -> x.getStatus() == BatchStatus.COMPLETED);
+        // chunk마다 커밋되므로 파티션마다 commit count가 남는다.
+        Assertions.assertThat(partitions).allMatch(x -> x.getCommitCount() > 0);
+
+        // 파티션의 write count가 manager step에 합산된다.
+        Assertions.assertThat(jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals(STEP_NAME + ".manager"))
+                .mapToInt(StepExecution::getWriteCount)
+                .sum())
+                .isEqualTo(size)
+                // SaveUserTasklet이 저장한 4 x 10,000명 중 주문 금액 1,000원인 10,000명을 뺀 나머지가 등급 상향 대상
+                .isEqualTo(30_000);
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.spring.batch.part6;
+
+import com.example.spring.batch.TestConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.partition.support.SimpleStepExecutionSplitter;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// 파티션이 끝나는 것과 다른 Worker가 남은 구간을 나누는 것이 동시에 일어나도 id를 빠짐없이 한 번씩만 처리해야 한다.
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = TestConfiguration.class)
+public class WorkStealingPartitionHandlerTest {
+
+    private static final String STEP_NAME = "workStealingTestStep";
+    private static final int GRID_SIZE = 8;
+    private static final long USERS = 20_000;
+    // 작게 나눠서 steal과 파티션 종료가 자주 겹치도록
+    private static final int MIN_SPLIT_SIZE = 5;
+    private static final int PAGE_SIZE = 7;
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Test
+    public void test_split_and_finish_race() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            Map<Long, AtomicInteger> processed = new ConcurrentHashMap<>();
+
+            Collection<StepExecution> partitions = handle(processed);
+
+            Assertions.assertThat(partitions).allMatch(x -> x.getStatus() == BatchStatus.COMPLETED);
+            Assertions.assertThat(partitions.size()).isGreaterThan(GRID_SIZE);
+            Assertions.assertThat(processed).hasSize((int) USERS);
+            Assertions.assertThat(processed.values()).allMatch(x -> x.get() == 1);
+        }
+    }
+
+    private Collection<StepExecution> handle(Map<Long, AtomicInteger> processed) throws Exception {
+        JobExecution jobExecution = jobRepository.createJobExecution("workStealingTestJob",
+                new JobParametersBuilder().addLong("time", System.nanoTime()).toJobParameters());
+        jobExecution.getExecutionContext().putInt(LevelUpSizingListener.GRID_SIZE_KEY, GRID_SIZE);
+        jobExecution.getExecutionContext().putInt(LevelUpSizingListener.CHUNK_SIZE_KEY, MIN_SPLIT_SIZE);
+
+        StepExecution managerStepExecution = jobExecution.createStepExecution(STEP_NAME + ".manager");
+        jobRepository.add(managerStepExecution);
+
+        WorkStealingPartitionHandler[] handler = new WorkStealingPartitionHandler[1];
+        handler[0] = new WorkStealingPartitionHandler(
+                new RangeStep(() -> handler[0], processed),
+                new SimpleAsyncTaskExecutor("work-stealing-test-"),
+                jobRepository);
+
+        return handler[0].handle(
+                new SimpleStepExecutionSplitter(jobRepository, true, STEP_NAME, unevenPartitioner()),
+                managerStepExecution);
+    }
+
+    // 첫 파티션에 대부분의 id를 몰아서 나머지 Worker가 계속 훔쳐 가도록
+    private Partitioner unevenPartitioner() {
+        return gridSize -> {
+            Map<String, ExecutionContext> result = new HashMap<>();
+            long minId = 1;
+            for (int i = 0; i < gridSize; i++) {
+                long maxId = i == 0 ? USERS - (gridSize - 1) * 10L : minId + 9;
+                ExecutionContext context = new ExecutionContext();
+                context.putLong("minId", minId);
+                context.putLong("maxId", maxId);
+                result.put("partition" + i, context);
+                minId = maxId + 1;
+            }
+            return result;
+        };
+    }
+
+    // StealableJpaKeysetPagingItemReader와 같이 페이지마다 range의 maxId까지만 처리하는 Step
+    private static class RangeStep implements Step {
+
+        private final Supplier<WorkStealingPartitionHandler> handler;
+        private final Map<Long, AtomicInteger> processed;
+
+        RangeStep(Supplier<WorkStealingPartitionHandler> handler, Map<Long, AtomicInteger> processed) {
+            this.handler = handler;
+            this.processed = processed;
+        }
+
+        @Override
+        public String getName() {
+            return STEP_NAME;
+        }
+
+        @Override
+        public boolean isAllowStartIfComplete() {
+            return true;
+        }
+
+        @Override
+        public int getStartLimit() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void execute(StepExecution stepExecution) {
+            StealableIdRange range = handler.get().rangeOf(stepExecution);
+            long lastId = stepExecution.getExecutionContext().getLong("minId") - 1;
+
+            while (true) {
+                long pageEnd = Math.min(lastId + PAGE_SIZE, range.maxId());
+                if (pageEnd <= lastId) {
+                    break;
+                }
+                Thread.yield();
+                // 조회하는 사이 뒤쪽 구간을 빼앗겼다면 줄어든 maxId까지만 처리
+                long maxId = range.fetched(pageEnd);
+                for (long id = lastId + 1; id <= Math.min(pageEnd, maxId); id++) {
+                    processed.computeIfAbsent(id, x -> new AtomicInteger()).incrementAndGet();
+                }
+                lastId = Math.min(pageEnd, maxId);
+            }
+
+            stepExecution.setStatus(BatchStatus.COMPLETED);
+            stepExecution.setExitStatus(ExitStatus.COMPLETED);
+        }
+    }
+}